@@ -0,0 +1,131 @@
+package fr.diginamic.hello.config;
+
+import fr.diginamic.hello.services.CsvImportService;
+import fr.diginamic.hello.services.DatasetVersion;
+import fr.diginamic.hello.services.ImportStatus;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Tags the read endpoints with the version of the dataset and answers conditional
+ * requests whose tag is still current with 304, before any handler or query runs.
+ * <p>
+ * The tag is weak, the same version being served as JSON or NDJSON. Nothing is tagged
+ * while the dataset is incomplete or while an import runs, since the data imported so
+ * far changes without a new version. Only successful responses are tagged: the tag is
+ * added once the status is known, when the body is written.
+ * <p>
+ * Registered on the read endpoints by {@link WebConfig}.
+ */
+@Component
+public class DatasetETagFilter extends OncePerRequestFilter {
+
+    private final DatasetVersion datasetVersion;
+    private final ImportStatus importStatus;
+    private final CsvImportService csvImportService;
+
+    /**
+     * @param datasetVersion   the version of the dataset
+     * @param importStatus     the state of the startup import
+     * @param csvImportService tells whether an import is running
+     */
+    public DatasetETagFilter(DatasetVersion datasetVersion, ImportStatus importStatus, CsvImportService csvImportService) {
+        this.datasetVersion = datasetVersion;
+        this.importStatus = importStatus;
+        this.csvImportService = csvImportService;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // The statistics of the cache change with every read
+        return !"GET".equals(request.getMethod()) || request.getRequestURI().equals("/villes/cache");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!importStatus.isReady() || csvImportService.isImportRunning()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String etag = "W/\"" + datasetVersion.get() + "\"";
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        chain.doFilter(request, new TaggedResponse(response, etag));
+    }
+
+    /**
+     * Compares the tags of an If-None-Match header with the current tag, weakly.
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = etag.substring(2);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(opaque) || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the tag when the body of a successful response starts being written; the
+     * status of the response is set by then.
+     */
+    private static final class TaggedResponse extends HttpServletResponseWrapper {
+
+        private final String etag;
+        private boolean decided;
+
+        private TaggedResponse(HttpServletResponse response, String etag) {
+            super(response);
+            this.etag = etag;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            tag();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            tag();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            tag();
+            super.flushBuffer();
+        }
+
+        private void tag() {
+            if (decided || isCommitted()) {
+                return;
+            }
+            decided = true;
+            if (getStatus() < 400) {
+                setHeader(HttpHeaders.ETAG, etag);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package fr.diginamic.hello.config;
+
+import fr.diginamic.hello.services.ImportStatus;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the census import in the health endpoint, under the name {@code csvImport}.
+ * It is part of the readiness group, which stays out of service until the import is done.
+ */
+@Component("csvImportHealthIndicator")
+public class ImportHealthIndicator implements HealthIndicator {
+
+    private final ImportStatus importStatus;
+
+    public ImportHealthIndicator(ImportStatus importStatus) {
+        this.importStatus = importStatus;
+    }
+
+    @Override
+    public Health health() {
+        return switch (importStatus.getEtat()) {
+            case TERMINE -> Health.up().build();
+            case ECHEC -> Health.down().withDetail("erreur", String.valueOf(importStatus.getErreur())).build();
+            default -> Health.outOfService().withDetail("etat", importStatus.getEtat()).build();
+        };
+    }
+}
@@ -0,0 +1,79 @@
+package fr.diginamic.hello.config;
+
+import fr.diginamic.hello.services.ImportStatus;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gates the read endpoints while the census import is running.
+ * <p>
+ * In {@code partial} mode the request is served from the data imported so far and the
+ * response carries the {@value #PARTIAL_HEADER} header; in {@code unavailable} mode the
+ * request is answered with 503 and a Retry-After header.
+ * <p>
+ * Once the startup import has failed, the reads are answered with 503 and an error
+ * message, without Retry-After since waiting does not help, until a file uploaded to
+ * POST /imports has been imported.
+ */
+@Component
+public class ImportReadinessInterceptor implements HandlerInterceptor {
+
+    public static final String PARTIAL_HEADER = "X-Donnees-Partielles";
+
+    private final ImportStatus importStatus;
+    private final boolean servePartialData;
+    private final int retryAfterSeconds;
+
+    /**
+     * @param importStatus      the state of the import
+     * @param mode              {@code partial} or {@code unavailable}
+     * @param retryAfterSeconds the delay suggested to the clients in {@code unavailable} mode
+     */
+    public ImportReadinessInterceptor(ImportStatus importStatus,
+                                      @Value("${recensement.import.reads-during-import:partial}") String mode,
+                                      @Value("${recensement.import.retry-after-seconds:10}") int retryAfterSeconds) {
+        if (!"partial".equals(mode) && !"unavailable".equals(mode)) {
+            throw new IllegalArgumentException("Mode de lecture pendant l'import inconnu : " + mode);
+        }
+        this.importStatus = importStatus;
+        this.servePartialData = "partial".equals(mode);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!"GET".equals(request.getMethod()) || importStatus.isReady()) {
+            return true;
+        }
+
+        if (importStatus.isFailed()) {
+            refuse(response, "L'import du recensement a échoué, envoyez le fichier à POST /imports pour le relancer");
+            return false;
+        }
+
+        if (servePartialData) {
+            response.setHeader(PARTIAL_HEADER, "true");
+            return true;
+        }
+
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        refuse(response, "Import du recensement en cours, réessayez plus tard");
+        return false;
+    }
+
+    private static void refuse(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(message);
+    }
+}
@@ -0,0 +1,12 @@
+package fr.diginamic.hello.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Runs the background jobs, such as the reconciliation of the population totals.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
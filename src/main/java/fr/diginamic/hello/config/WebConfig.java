@@ -0,0 +1,56 @@
+package fr.diginamic.hello.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ImportReadinessInterceptor importReadinessInterceptor;
+    // Maximum duration of writing a streamed response, instead of the default of the servlet container
+    private final Duration exportTimeout;
+
+    public WebConfig(ImportReadinessInterceptor importReadinessInterceptor,
+                     @Value("${recensement.export.timeout:10m}") Duration exportTimeout) {
+        this.importReadinessInterceptor = importReadinessInterceptor;
+        this.exportTimeout = exportTimeout;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(importReadinessInterceptor)
+                .addPathPatterns("/villes/**", "/departements/**", "/regions/**", "/reactive/**");
+    }
+
+    /**
+     * Runs the async work of Spring MVC, such as writing the cities of a reactive stream,
+     * on virtual threads of its own. A write blocked on a slow client then holds a
+     * virtual thread rather than one of the shared task executor, whatever the value of
+     * spring.threads.virtual.enabled.
+     * <p>
+     * The streamed NDJSON exports are closed if they are still being written after
+     * recensement.export.timeout. The uploads to /imports set their own timeout.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("mvc-async-");
+        executor.setVirtualThreads(true);
+        configurer.setTaskExecutor(executor);
+        configurer.setDefaultTimeout(exportTimeout.toMillis());
+    }
+
+    @Bean
+    public FilterRegistrationBean<DatasetETagFilter> datasetETagFilterRegistration(DatasetETagFilter datasetETagFilter) {
+        FilterRegistrationBean<DatasetETagFilter> registration = new FilterRegistrationBean<>(datasetETagFilter);
+        registration.addUrlPatterns("/villes/*", "/departements/*", "/regions/*", "/reactive/*");
+        return registration;
+    }
+}
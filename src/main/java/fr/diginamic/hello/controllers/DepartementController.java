@@ -1,11 +1,17 @@
 package fr.diginamic.hello.controllers;
 
+import fr.diginamic.hello.dtos.DepartementDto;
+import fr.diginamic.hello.dtos.PopulationDto;
 import fr.diginamic.hello.entity.Departement;
 import fr.diginamic.hello.services.DepartementService;
+import fr.diginamic.hello.services.PopulationRollups;
+import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
 import java.util.List;
 
 
@@ -13,25 +19,32 @@ import java.util.List;
 @RequestMapping("/departements")
 public class DepartementController {
 
+    // Value of the retour parameter asking a write for all the departments
+    private static final String RETOUR_LISTE = "liste";
+
     // The DepartementService is injected here to handle business logic
     private final DepartementService departementService;
+    // Population totals of the departements, kept in memory
+    private final PopulationRollups populationRollups;
 
     /**
      * Constructor to inject the DepartementService dependency.
      *
      * @param departementService the DepartementService instance to be used by this controller
+     * @param populationRollups  the population totals of the departements
      */
-    public DepartementController(DepartementService departementService) {
+    public DepartementController(DepartementService departementService, PopulationRollups populationRollups) {
         this.departementService = departementService;
+        this.populationRollups = populationRollups;
     }
 
     /**
      * Get /departements
      *
-     * @return the list of {@link Departement} objects
+     * @return the summaries of the departements, without their cities
      */
     @GetMapping
-    public List<Departement> getDepartements() {
+    public List<DepartementDto> getDepartements() {
         return departementService.extractDepartements();
     }
 
@@ -39,37 +52,84 @@ public class DepartementController {
      * Get /departements/{id} -> Get a department by its ID
      *
      * @param id the ID of the department to retrieve
-     * @return ResponseEntity with the Departement object or an error if not found
+     * @return ResponseEntity with the summary of the department or an error if not found
      */
     @GetMapping(path = "/{id}")
-    public ResponseEntity<Departement> getDepartementById(@PathVariable Integer id) {
-        Departement departement = departementService.extractDepartementById(id);
+    public ResponseEntity<DepartementDto> getDepartementById(@PathVariable Integer id) {
+        DepartementDto departement = departementService.extractDepartementById(id);
         return ResponseEntity.ok(departement);
     }
 
+    /**
+     * Get /departements/{code}/villes?page={page}&size={size} -> Get a page of the cities of a department
+     *
+     * @param code the code of the department
+     * @param page the number of the page, from 0
+     * @param size the number of cities of the page
+     * @return ResponseEntity with the page of cities, most populated first, or an error if the department is not found
+     */
+    @GetMapping(path = "/{code}/villes")
+    public ResponseEntity<?> getVillesDepartement(@PathVariable String code,
+                                                  @RequestParam(defaultValue = "0") int page,
+                                                  @RequestParam(defaultValue = "50") int size) {
+        try {
+            return ResponseEntity.ok(departementService.extractVillesOfDepartement(code, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Get /departements/population/{code} -> Get the population totals of a department
+     *
+     * @param code the code of the department
+     * @return ResponseEntity with the number of cities and inhabitants of the department, or an error if not found
+     */
+    @GetMapping(path = "/population/{code}")
+    public ResponseEntity<?> getPopulationDepartement(@PathVariable String code) {
+        PopulationDto population = populationRollups.getDepartement(code);
+        if (population == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Département avec le code " + code + " non trouvé");
+        }
+        return ResponseEntity.ok(population);
+    }
+
     /**
      * Post /departements/add -> Add a new department
+     * Post /departements/add?retour=liste -> Add a new department and get all the departments
      *
      * @param departement the Departement object to add
-     * @return ResponseEntity with the updated list of departments
+     * @param retour      {@code liste} to get all the departments instead of the created one
+     * @return ResponseEntity with the created department and its location
      */
     @PostMapping(path = "/add")
-    public ResponseEntity<List<Departement>> addDepartement(@Valid @RequestBody Departement departement) {
-        List<Departement> updatedDepartements = departementService.insertDepartement(departement);
-        return ResponseEntity.ok(updatedDepartements);
+    public ResponseEntity<?> addDepartement(@Valid @RequestBody Departement departement,
+                                            @RequestParam(required = false) String retour) {
+        DepartementDto created = departementService.insertDepartement(departement);
+        return ResponseEntity.created(location(created))
+                .body(RETOUR_LISTE.equals(retour) ? departementService.extractDepartements() : created);
     }
 
     /**
      * Put /departements/update/{id} -> Update an existing department
+     * Put /departements/update/{id}?retour=liste -> Update an existing department and get all the departments
      *
-     * @param idDepartement     the ID of the department to update
+     * @param idDepartement      the ID of the department to update
      * @param updatedDepartement the updated Departement object
-     * @return ResponseEntity with the updated list of departments
+     * @param retour             {@code liste} to get all the departments instead of the updated one
+     * @return ResponseEntity with the updated department and its location
      */
     @PutMapping(path = "/update/{id}")
-    public ResponseEntity<List<Departement>> updateDepartement(@PathVariable Integer idDepartement,@Valid @RequestBody Departement updatedDepartement) {
-        List<Departement> departements = departementService.updateDepartement(idDepartement, updatedDepartement);
-        return ResponseEntity.ok(departements);
+    public ResponseEntity<?> updateDepartement(@PathVariable("id") Integer idDepartement,
+                                               @Valid @RequestBody Departement updatedDepartement,
+                                               @RequestParam(required = false) String retour) {
+        DepartementDto updated = departementService.updateDepartement(idDepartement, updatedDepartement);
+        return ResponseEntity.ok()
+                .location(location(updated))
+                .body(RETOUR_LISTE.equals(retour) ? departementService.extractDepartements() : updated);
     }
 
     /**
@@ -79,10 +139,17 @@ public class DepartementController {
      * @return ResponseEntity with a success message
      */
     @DeleteMapping(path = "/delete/{id}")
-    public ResponseEntity<String> deleteDepartement(@PathVariable Integer idDepartement) {
+    public ResponseEntity<String> deleteDepartement(@PathVariable("id") Integer idDepartement) {
         departementService.deleteDepartement(idDepartement);
         return ResponseEntity.ok("Departement supprimé avec succès pour l'id : " + idDepartement);
     }
 
+    /**
+     * @return the path at which a department is read
+     */
+    private static URI location(DepartementDto departement) {
+        return URI.create("/departements/" + departement.getId());
+    }
+
 
 }
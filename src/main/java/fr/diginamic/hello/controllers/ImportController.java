@@ -0,0 +1,206 @@
+package fr.diginamic.hello.controllers;
+
+import fr.diginamic.hello.dtos.ImportJobDto;
+import fr.diginamic.hello.dtos.ImportProgressDto;
+import fr.diginamic.hello.services.ImportJob;
+import fr.diginamic.hello.services.ImportJobService;
+import fr.diginamic.hello.services.ImportMonitor;
+import fr.diginamic.hello.services.ImportProgress;
+import fr.diginamic.hello.services.ImportStatus;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+@RestController
+@RequestMapping("/imports")
+public class ImportController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImportController.class);
+
+    private final ImportMonitor importMonitor;
+    private final ImportStatus importStatus;
+    private final ImportJobService importJobService;
+    // Uploads are received and imported off the request threads, on virtual threads when the requests are
+    private final AsyncTaskExecutor uploadExecutor;
+    // Maximum duration of an upload and its import, after which the response is closed
+    private final long uploadTimeout;
+
+    /**
+     * Constructor to inject the import dependencies.
+     *
+     * @param importMonitor    the monitor holding the progress of the import
+     * @param importStatus     the state of the startup import
+     * @param importJobService the service importing the uploaded files
+     * @param uploadTimeout    the maximum duration of an upload and its import
+     * @param virtualThreads   whether the requests are handled on virtual threads
+     */
+    public ImportController(ImportMonitor importMonitor, ImportStatus importStatus, ImportJobService importJobService,
+                            @Value("${recensement.import.upload-timeout:30m}") Duration uploadTimeout,
+                            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.importMonitor = importMonitor;
+        this.importStatus = importStatus;
+        this.importJobService = importJobService;
+        this.uploadTimeout = uploadTimeout.toMillis();
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("csv-upload-");
+        executor.setVirtualThreads(virtualThreads);
+        this.uploadExecutor = executor;
+    }
+
+    /**
+     * Post /imports -> Import a census CSV file sent as the request body
+     * <p>
+     * The job is answered at once, before the body is read: the response is committed with
+     * 202, the location of the job and its state as a first JSON line. The body is then
+     * parsed and written as it is received, on an upload thread, so neither memory nor disk
+     * use depends on the size of the file. Once the import is over, the final state of the
+     * job is sent as a second line and the response ends. The job can also be polled
+     * through its location.
+     *
+     * @param request the request whose body holds the CSV content
+     * @return ResponseEntity 202 streaming the state of the job, or 409 if another import is running
+     */
+    @PostMapping(consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<?> uploadCsv(HttpServletRequest request) {
+        return upload(request::getInputStream);
+    }
+
+    /**
+     * Post /imports -> Import a census CSV file sent as the {@code fichier} part of a multipart upload
+     * <p>
+     * The parts are read from the request as they arrive, without being spooled by the
+     * servlet container, and the {@code fichier} part is imported like a request body.
+     *
+     * @param request the multipart request
+     * @return ResponseEntity 202 streaming the state of the job, or 409 if another import is running
+     */
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> uploadMultipart(HttpServletRequest request) {
+        return upload(() -> {
+            FileItemInputIterator parts = new JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory>().getItemIterator(request);
+            while (parts.hasNext()) {
+                FileItemInput part = parts.next();
+                if (!part.isFormField() && "fichier".equals(part.getFieldName())) {
+                    return part.getInputStream();
+                }
+            }
+            throw new IllegalArgumentException("La partie fichier est absente de l'envoi");
+        });
+    }
+
+    /**
+     * Get /imports -> Get all the upload jobs, running or finished
+     *
+     * @return the list of jobs
+     */
+    @GetMapping
+    public List<ImportJobDto> getJobs() {
+        return importJobService.getJobs().stream()
+                .map(ImportJobDto::of)
+                .toList();
+    }
+
+    /**
+     * Get /imports/{id} -> Get the state and the counters of an upload job
+     *
+     * @param id the id of the job
+     * @return ResponseEntity with the job or an error if not found
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getJob(@PathVariable String id) {
+        ImportJob job = importJobService.getJob(id);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Import avec l'id " + id + " non trouvé");
+        }
+        return ResponseEntity.ok(ImportJobDto.of(job));
+    }
+
+    /**
+     * Get /imports/progress -> Get the counters of the current, or last, census import
+     *
+     * @return ResponseEntity with the counters of the import, or a message if no import has run
+     */
+    @GetMapping("/progress")
+    public ResponseEntity<?> getProgress() {
+        ImportProgress progress = importMonitor.getCurrent();
+        if (progress == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Aucun import n'a été lancé");
+        }
+        return ResponseEntity.ok(ImportProgressDto.of(importStatus.getEtat().name(), progress));
+    }
+
+    /**
+     * Starts the job of an upload and imports its content on an upload thread, the state
+     * of the job being sent before and after the import.
+     */
+    private ResponseEntity<?> upload(Contenu contenu) {
+        ImportJob job;
+        try {
+            job = importJobService.start();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(uploadTimeout);
+        uploadExecutor.execute(() -> {
+            send(emitter, job);
+            try (InputStream in = contenu.open()) {
+                importJobService.run(job, in);
+            } catch (IOException | RuntimeException e) {
+                // The content could not be opened, so the import has not started
+                if (job.getFin() == null) {
+                    importJobService.abort(job, e);
+                }
+            }
+            send(emitter, job);
+            emitter.complete();
+        });
+        return ResponseEntity.accepted()
+                .location(URI.create("/imports/" + job.getId()))
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(emitter);
+    }
+
+    /**
+     * Sends the state of a job as a JSON line. A client gone does not stop the import,
+     * which fails by itself if the content can no longer be read.
+     */
+    private static void send(ResponseBodyEmitter emitter, ImportJob job) {
+        try {
+            emitter.send(ImportJobDto.of(job), MediaType.APPLICATION_JSON);
+            emitter.send("\n", MediaType.TEXT_PLAIN);
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.debug("État de l'import {} non envoyé : {}", job.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the uploaded content of a request.
+     */
+    @FunctionalInterface
+    private interface Contenu {
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,67 @@
+package fr.diginamic.hello.controllers;
+
+import fr.diginamic.hello.dtos.PopulationDto;
+import fr.diginamic.hello.services.PopulationRollups;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/regions")
+public class RegionController {
+
+    // Population totals of the regions and departements, kept in memory
+    private final PopulationRollups populationRollups;
+
+    /**
+     * Constructor to inject the PopulationRollups dependency.
+     *
+     * @param populationRollups the population totals of the regions and departements
+     */
+    public RegionController(PopulationRollups populationRollups) {
+        this.populationRollups = populationRollups;
+    }
+
+    /**
+     * Get /regions -> Get the population totals of every region
+     *
+     * @return the number of cities and inhabitants of each region
+     */
+    @GetMapping
+    public List<PopulationDto> getRegions() {
+        return populationRollups.getRegions();
+    }
+
+    /**
+     * Get /regions/{code} -> Get the population totals of a region
+     *
+     * @param code the code of the region
+     * @return ResponseEntity with the number of cities and inhabitants of the region, or an error if not found
+     */
+    @GetMapping(path = "/{code}")
+    public ResponseEntity<?> getRegion(@PathVariable String code) {
+        PopulationDto population = populationRollups.getRegion(code);
+        if (population == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Région avec le code " + code + " non trouvée");
+        }
+        return ResponseEntity.ok(population);
+    }
+
+    /**
+     * Get /regions/{code}/departements -> Get the population totals of the departments of a region
+     *
+     * @param code the code of the region
+     * @return ResponseEntity with the totals of each department of the region, or an error if not found
+     */
+    @GetMapping(path = "/{code}/departements")
+    public ResponseEntity<?> getDepartementsOfRegion(@PathVariable String code) {
+        if (populationRollups.getRegion(code) == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Région avec le code " + code + " non trouvée");
+        }
+        return ResponseEntity.ok(populationRollups.getDepartementsOfRegion(code));
+    }
+}
@@ -1,37 +1,70 @@
 package fr.diginamic.hello.controllers;
 
+import fr.diginamic.hello.dtos.CacheStatsDto;
+import fr.diginamic.hello.dtos.VilleLotDto;
 import fr.diginamic.hello.entity.Ville;
+import fr.diginamic.hello.services.VilleBatchService;
 import fr.diginamic.hello.services.VilleService;
+import fr.diginamic.hello.services.VilleStreamService;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
 
 
 @RestController
 @RequestMapping("/villes")
 public class VilleController {
 
+    // Value of the retour parameter asking a write for all the cities
+    private static final String RETOUR_LISTE = "liste";
+
     private final VilleService villeService;
+    // Writes the batches of cities
+    private final VilleBatchService villeBatchService;
+    // Streams the large results as NDJSON
+    private final VilleStreamService villeStreamService;
 
     /**
      * Constructor to inject the VilleService dependency.
      *
      * @param villeService
+     * @param villeBatchService  the service writing batches of cities
+     * @param villeStreamService the service streaming the cities
      */
-    public VilleController(VilleService villeService) {
+    public VilleController(VilleService villeService, VilleBatchService villeBatchService,
+                           VilleStreamService villeStreamService) {
         this.villeService = villeService;
+        this.villeBatchService = villeBatchService;
+        this.villeStreamService = villeStreamService;
     }
 
     /**
-     * Get /villes
+     * Get /villes?page={page}&size={size} -> Get a page of cities by offset
+     * Get /villes?size={size}&tri={id|population}&cursor={token}&count={true|false} -> Get a page of cities
+     * following a cursor, the token of the next page being returned with each page
      *
+     * @param page   the number of the page, offset pagination
+     * @param size   the number of cities of the page
+     * @param cursor the token of the page returned with the previous one, cursor pagination
+     * @param tri    the order of the first page of a cursor pagination
+     * @param count  whether the total number of cities is computed by a cursor pagination
      * @return the list of {@link Ville} objects
      */
     @GetMapping
-    public ResponseEntity<?> getAllVilles(@RequestParam int page, @RequestParam int size) {
-        return villeService.extractVilles(page, size);
+    public ResponseEntity<?> getAllVilles(@RequestParam(required = false) Integer page, @RequestParam int size,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(defaultValue = "id") String tri,
+                                          @RequestParam(defaultValue = "false") boolean count) {
+        if (page != null) {
+            return villeService.extractVilles(page, size);
+        }
+        return villeService.extractVillesParCurseur(cursor, tri, size, count);
     }
 
     /**
@@ -57,15 +90,41 @@ public class VilleController {
     }
 
     /**
-     * Get /villes/search/start?prefix={prefix}
+     * Get /villes/cache -> Get the statistics of the cache of cities
      *
-     * @param prefix the starting of the city to retrieve
-     * @return ResponseEntity with the Ville object or an error if not found
+     * @return the hits, misses, evictions and size of the cache
+     */
+    @GetMapping("/cache")
+    public CacheStatsDto getCacheStats() {
+        return villeService.extractCacheStats();
+    }
+
+    /**
+     * Get /villes/search/start?prefix={prefix}&limit={limit}
+     *
+     * @param prefix the starting of the city to retrieve, case and accents ignored
+     * @param limit  the maximum number of cities returned, all of them if absent
+     * @return ResponseEntity with the matching cities, the most populated first, or an error if not found
      *
      */
     @GetMapping("/search/start")
-    public ResponseEntity<?> getCitiesStartingWith(@RequestParam String prefix) {
-        return villeService.extractVilleStartsWith(prefix);
+    public ResponseEntity<?> getCitiesStartingWith(@RequestParam String prefix,
+                                                   @RequestParam(required = false) Integer limit) {
+        return villeService.extractVilleStartsWith(prefix, limit);
+    }
+
+    /**
+     * Get /villes/search/fuzzy?nom={nom}&limit={limit}
+     * -> Get the cities whose name is closest to a text, ignoring case, accents and punctuation
+     *
+     * @param nom   the text searched
+     * @param limit the maximum number of cities returned, 10 by default
+     * @return the closest cities, the most similar first
+     */
+    @GetMapping("/search/fuzzy")
+    public ResponseEntity<?> getCitiesLike(@RequestParam String nom,
+                                           @RequestParam(defaultValue = "10") int limit) {
+        return villeService.extractVillesProches(nom, limit);
     }
 
     /**
@@ -79,27 +138,34 @@ public class VilleController {
      *   }
      * }
      *
+     * Post /villes/add?retour=liste -> Add a new city and get all the cities
+     *
      * @param ville  the Ville object to add
      * @param result the BindingResult containing validation results
-     * @return ResponseEntity with the created Ville object or validation errors
+     * @param retour {@code liste} to get all the cities instead of the created one
+     * @return ResponseEntity with the created city and its location, or validation errors
      */
     @PostMapping(value = "/add", consumes = "application/json")
-    public ResponseEntity<?> insertVille(@Valid @RequestBody Ville ville, BindingResult result) {
-        return villeService.insertVille(ville, result);
+    public ResponseEntity<?> insertVille(@Valid @RequestBody Ville ville, BindingResult result,
+                                         @RequestParam(required = false) String retour) {
+        return villeService.insertVille(ville, result, RETOUR_LISTE.equals(retour));
     }
 
     /**
      * Put /villes/update/{id} -> Update an existing city
+     * Put /villes/update/{id}?retour=liste -> Update an existing city and get all the cities
      *
      * @param idVille      the ID of the city to update
      * @param villeUpdated the updated Ville object
-     * @return ResponseEntity with a success message or an error if the city does not exist
+     * @param retour       {@code liste} to get all the cities instead of the updated one
+     * @return ResponseEntity with the updated city and its location, or an error if the city does not exist
      */
     @PutMapping("/update/{id}")
-    public ResponseEntity<?> updateVille(@PathVariable int idVille,
+    public ResponseEntity<?> updateVille(@PathVariable("id") int idVille,
                                          @Valid @RequestBody Ville villeUpdated,
-                                         BindingResult result) {
-        return villeService.updateVille(idVille, villeUpdated, result);
+                                         BindingResult result,
+                                         @RequestParam(required = false) String retour) {
+        return villeService.updateVille(idVille, villeUpdated, result, RETOUR_LISTE.equals(retour));
     }
 
     /**
@@ -109,10 +175,47 @@ public class VilleController {
      * @return ResponseEntity with a success message or an error if the city does not exist
      */
     @DeleteMapping("/delete/{id}")
-    public ResponseEntity<?> deleteVille(@PathVariable int idVille) {
+    public ResponseEntity<?> deleteVille(@PathVariable("id") int idVille) {
         return villeService.deleteVille(idVille);
     }
 
+    /**
+     * Post /villes/batch -> Add a batch of cities
+     * [
+     *   { "codeVille": "75056", "nom": "Paris", "nbHabitants": 2148000, "codeDepartement": "75" }
+     * ]
+     *
+     * @param villes the cities to add
+     * @return ResponseEntity with the result of each city, in the order of the batch
+     */
+    @PostMapping(value = "/batch", consumes = "application/json")
+    public ResponseEntity<?> insertVilles(@RequestBody List<VilleLotDto> villes) {
+        return villeBatchService.insertVilles(villes);
+    }
+
+    /**
+     * Put /villes/batch -> Update a batch of cities, each one identified by its id
+     *
+     * @param villes the updated cities
+     * @return ResponseEntity with the result of each city, in the order of the batch
+     */
+    @PutMapping(value = "/batch", consumes = "application/json")
+    public ResponseEntity<?> updateVilles(@RequestBody List<VilleLotDto> villes) {
+        return villeBatchService.updateVilles(villes);
+    }
+
+    /**
+     * Delete /villes/batch -> Delete a batch of cities
+     * [ 1, 2, 3 ]
+     *
+     * @param ids the IDs of the cities to delete
+     * @return ResponseEntity with the result of each city, in the order of the batch
+     */
+    @DeleteMapping(value = "/batch", consumes = "application/json")
+    public ResponseEntity<?> deleteVilles(@RequestBody List<Integer> ids) {
+        return villeBatchService.deleteVilles(ids);
+    }
+
     /**
      * Get /villes/top/min?min={min} -> Get the most populated cities
      *
@@ -124,6 +227,18 @@ public class VilleController {
         return villeService.getTopNCitiesByPopulation(min);
     }
 
+    /**
+     * Get /villes/top/min?min={min} with Accept: application/x-ndjson -> Stream the most populated cities,
+     * one JSON object per line
+     *
+     * @param min the minimum population
+     * @return ResponseEntity streaming the cities, most populated first
+     */
+    @GetMapping(value = "/top/min", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamTopVilles(@RequestParam int min) {
+        return villeStreamService.streamTopNCitiesByPopulation(min);
+    }
+
     /**
      * Get /villes/departement/population?min={min}&max={max} -> Get cities
      * with population within a specified range
@@ -138,6 +253,19 @@ public class VilleController {
         return villeService.getCitiesByPopulationRange(min, max);
     }
 
+    /**
+     * Get /villes/departement/population?min={min}&max={max} with Accept: application/x-ndjson -> Stream
+     * the cities with population within a specified range, one JSON object per line
+     *
+     * @param min the minimum population
+     * @param max the maximum population
+     * @return ResponseEntity streaming the cities, most populated first
+     */
+    @GetMapping(value = "/departement/population", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCitiesByRange(@RequestParam int min, @RequestParam int max) {
+        return villeStreamService.streamCitiesByPopulationRange(min, max);
+    }
+
     /**
      * Get /villes/top/departement/min?codeDepartement={codeDepartement}&min={min} -> Get th most populated cities of specific department
      *
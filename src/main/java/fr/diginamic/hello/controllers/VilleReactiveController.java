@@ -0,0 +1,101 @@
+package fr.diginamic.hello.controllers;
+
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.services.VilleReactiveService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+/**
+ * Read-only queries on the cities, streamed as NDJSON, one city per line.
+ * <p>
+ * The request thread is released as soon as the query is subscribed; the cities are
+ * then written one at a time, each one requested once the previous one has been
+ * written. The writes are blocking: a slow client holds the thread writing its response
+ * until its socket accepts the data, which is why they run on the virtual threads of
+ * the MVC async executor configured by {@link fr.diginamic.hello.config.WebConfig}.
+ * <p>
+ * Invalid parameters are answered with 400, and fuzzy searches before the index of the
+ * names is built with 503.
+ */
+@RestController
+@RequestMapping(path = "/reactive/villes", produces = MediaType.APPLICATION_NDJSON_VALUE)
+public class VilleReactiveController {
+
+    private final VilleReactiveService villeReactiveService;
+
+    public VilleReactiveController(VilleReactiveService villeReactiveService) {
+        this.villeReactiveService = villeReactiveService;
+    }
+
+    /**
+     * Get /reactive/villes/top/min?min={min}&codeDepartement={codeDepartement}
+     * -> Stream the cities above a population, in the whole country or in a department
+     *
+     * @param min             the minimum population, exclusive
+     * @param codeDepartement the code of the department, all of them if absent
+     * @return the cities, most populated first
+     */
+    @GetMapping("/top/min")
+    public Flux<VilleDto> getTopVilles(@RequestParam int min, @RequestParam(required = false) String codeDepartement) {
+        return villeReactiveService.findGreaterThan(codeDepartement, min);
+    }
+
+    /**
+     * Get /reactive/villes/population?min={min}&max={max}&codeDepartement={codeDepartement}
+     * -> Stream the cities within a population range, in the whole country or in a department
+     *
+     * @param min             the minimum population
+     * @param max             the maximum population
+     * @param codeDepartement the code of the department, all of them if absent
+     * @return the cities, most populated first
+     */
+    @GetMapping("/population")
+    public Flux<VilleDto> getCitiesByRange(@RequestParam int min, @RequestParam int max,
+                                           @RequestParam(required = false) String codeDepartement) {
+        return villeReactiveService.findBetween(codeDepartement, min, max);
+    }
+
+    /**
+     * Get /reactive/villes/top/departement/n?codeDepartement={codeDepartement}&n={n}
+     * -> Stream the n most populated cities of a department
+     *
+     * @param codeDepartement the code of the department
+     * @param n               the number of cities
+     * @return the cities, most populated first
+     */
+    @GetMapping("/top/departement/n")
+    public Flux<VilleDto> getTopVillesOfDepartement(@RequestParam String codeDepartement, @RequestParam int n) {
+        return villeReactiveService.findTop(codeDepartement, n);
+    }
+
+    /**
+     * Get /reactive/villes/search/start?prefix={prefix}&limit={limit}
+     * -> Stream the cities whose name starts with a prefix, case and accents ignored
+     *
+     * @param prefix the start of the name
+     * @param limit  the maximum number of cities, 100 by default
+     * @return the cities, most populated first
+     */
+    @GetMapping("/search/start")
+    public Flux<VilleDto> getCitiesStartingWith(@RequestParam String prefix,
+                                                @RequestParam(defaultValue = "100") int limit) {
+        return villeReactiveService.searchStartingWith(prefix, limit);
+    }
+
+    /**
+     * Get /reactive/villes/search/fuzzy?nom={nom}&limit={limit}
+     * -> Stream the cities whose name is closest to a text
+     *
+     * @param nom   the text searched
+     * @param limit the maximum number of cities, 10 by default
+     * @return the cities, the most similar first
+     */
+    @GetMapping("/search/fuzzy")
+    public Flux<VilleDto> getCitiesLike(@RequestParam String nom, @RequestParam(defaultValue = "10") int limit) {
+        return villeReactiveService.searchLike(nom, limit);
+    }
+}
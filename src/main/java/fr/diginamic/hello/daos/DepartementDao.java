@@ -4,6 +4,7 @@ import fr.diginamic.hello.entity.Departement;
 import jakarta.persistence.*;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Repository
@@ -21,6 +22,24 @@ public class DepartementDao {
         return em.createQuery("SELECT d FROM Departement d", Departement.class).getResultList();
     }
 
+    /**
+     * Retrieve all Departement rows without their cities.
+     * The returned instances are detached and their list of cities is left empty.
+     *
+     * @return all the departements, without their cities
+     */
+    public List<Departement> getAllDepartementWithoutVilles() {
+        List<Object[]> rows = em.createQuery("SELECT d.id, d.code, d.nom, d.nbHabitants FROM Departement d", Object[].class)
+                .getResultList();
+        List<Departement> departements = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Departement departement = new Departement((String) row[1], (String) row[2], (Integer) row[3]);
+            departement.setId((Integer) row[0]);
+            departements.add(departement);
+        }
+        return departements;
+    }
+
     /**
      * Retrieve a Departement entity by its ID.
      *
@@ -0,0 +1,12 @@
+package fr.diginamic.hello.daos;
+
+/**
+ * A departement whose population total differs from the sum of its cities.
+ *
+ * @param idDepartement   the ID of the departement
+ * @param codeDepartement the code of the departement
+ * @param nbHabitants     the population total stored on the departement
+ * @param somme           the sum of the municipal populations of its cities
+ */
+public record EcartPopulation(int idDepartement, String codeDepartement, int nbHabitants, long somme) {
+}
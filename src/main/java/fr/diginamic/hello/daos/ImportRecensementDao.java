@@ -0,0 +1,37 @@
+package fr.diginamic.hello.daos;
+
+import fr.diginamic.hello.entity.ImportRecensement;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public class ImportRecensementDao {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * Retrieves the checksum of the last imported census file.
+     *
+     * @return the checksum of the last import, or null if no file was imported yet
+     */
+    public String getLastChecksum() {
+        List<String> checksums = em.createQuery(
+                        "SELECT i.checksum FROM ImportRecensement i ORDER BY i.id DESC", String.class)
+                .setMaxResults(1)
+                .getResultList();
+        return checksums.isEmpty() ? null : checksums.get(0);
+    }
+
+    /**
+     * Records a successful import.
+     *
+     * @param importRecensement the import to record
+     */
+    public void insertImport(ImportRecensement importRecensement) {
+        em.persist(importRecensement);
+    }
+}
@@ -0,0 +1,15 @@
+package fr.diginamic.hello.daos;
+
+/**
+ * The population of a departement, summed over its cities.
+ *
+ * @param codeDepartement the code of the departement
+ * @param nomDepartement  the name of the departement
+ * @param codeRegion      the code of the region of the departement, null if it has none
+ * @param nomRegion       the name of the region of the departement
+ * @param nbVilles        the number of cities of the departement
+ * @param nbHabitants     the sum of the municipal populations of its cities
+ */
+public record PopulationDepartement(String codeDepartement, String nomDepartement, String codeRegion, String nomRegion,
+                                    int nbVilles, long nbHabitants) {
+}
@@ -0,0 +1,33 @@
+package fr.diginamic.hello.daos;
+
+import fr.diginamic.hello.entity.Region;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public class RegionDao {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * Retrieves all Region entities from the database.
+     *
+     * @return a list of all Region entities
+     */
+    public List<Region> getAllRegions() {
+        return em.createQuery("SELECT r FROM Region r", Region.class).getResultList();
+    }
+
+    /**
+     * Inserts a new Region entity into the database.
+     *
+     * @param region the Region object to insert
+     */
+    public void insertRegion(Region region) {
+        em.persist(region);
+    }
+}
@@ -1,11 +1,16 @@
 package fr.diginamic.hello.daos;
 
 
+import fr.diginamic.hello.entity.Departement;
 import fr.diginamic.hello.entity.Ville;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
 import org.springframework.stereotype.Repository;
 
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
 import java.util.List;
 
 @Repository
@@ -25,6 +30,140 @@ public class VilleDao {
         return em.createQuery("SELECT v FROM Ville v", Ville.class).getResultList();
     }
 
+    /**
+     * Tells whether the Ville table holds at least one row, without loading any entity.
+     *
+     * @return true if at least one Ville exists
+     */
+    public boolean hasVilles() {
+        return !em.createQuery("SELECT v.id FROM Ville v", Integer.class)
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
+    }
+
+    /**
+     * Retrieves the columns of every Ville compared by the census import, without loading entities.
+     *
+     * @return the imported columns of all the cities
+     */
+    public List<VilleRecensee> getVillesRecensees() {
+        return em.createQuery("SELECT new fr.diginamic.hello.daos.VilleRecensee(v.id, v.codeVille, v.nom, v.nbHabitants, d.code, "
+                        + "v.codeArrondissement, v.codeCanton) "
+                        + "FROM Ville v JOIN v.departement d", VilleRecensee.class)
+                .getResultList();
+    }
+
+    /**
+     * Retrieves the columns of every Ville held by the in-memory indexes, without loading entities.
+     *
+     * @return all the cities, with the code and name of their department
+     */
+    public List<VilleResume> getVillesResumees() {
+        return em.createQuery("SELECT new fr.diginamic.hello.daos.VilleResume(v.id, v.codeVille, v.nom, v.nbHabitants, d.code, d.nom) "
+                        + "FROM Ville v JOIN v.departement d", VilleResume.class)
+                .getResultList();
+    }
+
+    /**
+     * Retrieves the columns of a Ville held by the in-memory indexes, without loading the entity.
+     *
+     * @param id the ID of the Ville
+     * @return the city, or null if not found
+     */
+    public VilleResume getVilleResumee(int id) {
+        List<VilleResume> villes = em.createQuery("SELECT new fr.diginamic.hello.daos.VilleResume(v.id, v.codeVille, v.nom, v.nbHabitants, d.code, d.nom) "
+                        + "FROM Ville v JOIN v.departement d WHERE v.id = :id", VilleResume.class)
+                .setParameter("id", id)
+                .getResultList();
+        return villes.isEmpty() ? null : villes.get(0);
+    }
+
+    /**
+     * Reads the cities following an id, in ascending id order, with an index seek instead of an offset.
+     *
+     * @param lastId the ID of the last city already read, 0 to start from the first one
+     * @param limit  the maximum number of cities read
+     * @return the next cities
+     */
+    public List<VilleResume> getVillesApres(int lastId, int limit) {
+        return em.createQuery("SELECT new fr.diginamic.hello.daos.VilleResume(v.id, v.codeVille, v.nom, v.nbHabitants, d.code, d.nom) "
+                        + "FROM Ville v JOIN v.departement d WHERE v.id > :lastId ORDER BY v.id", VilleResume.class)
+                .setParameter("lastId", lastId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Reads the cities following a (population, id) pair, by descending population then descending id,
+     * with an index seek instead of an offset.
+     *
+     * @param nbHabitants the population of the last city already read, null to start from the first one
+     * @param lastId      the ID of the last city already read
+     * @param limit       the maximum number of cities read
+     * @return the next cities
+     */
+    public List<VilleResume> getVillesParPopulationApres(Integer nbHabitants, int lastId, int limit) {
+        return getVillesParPopulationApres(null, nbHabitants, lastId, limit);
+    }
+
+    /**
+     * Reads the cities of a departement following a (population, id) pair, by descending population
+     * then descending id, with an index seek instead of an offset.
+     *
+     * @param codeDepartement the code of the departement, null for the whole country
+     * @param nbHabitants     the population of the last city already read, null to start from the first one
+     * @param lastId          the ID of the last city already read
+     * @param limit           the maximum number of cities read
+     * @return the next cities
+     */
+    public List<VilleResume> getVillesParPopulationApres(String codeDepartement, Integer nbHabitants, int lastId, int limit) {
+        List<String> conditions = new ArrayList<>();
+        if (codeDepartement != null) {
+            conditions.add("d.code = :codeDepartement");
+        }
+        if (nbHabitants != null) {
+            conditions.add("(v.nbHabitants < :nbHabitants OR (v.nbHabitants = :nbHabitants AND v.id < :lastId))");
+        }
+        String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions) + " ";
+        TypedQuery<VilleResume> query = em.createQuery("SELECT new fr.diginamic.hello.daos.VilleResume(v.id, v.codeVille, v.nom, v.nbHabitants, d.code, d.nom) "
+                        + "FROM Ville v JOIN v.departement d " + where + "ORDER BY v.nbHabitants DESC, v.id DESC", VilleResume.class)
+                .setMaxResults(limit);
+        if (codeDepartement != null) {
+            query.setParameter("codeDepartement", codeDepartement);
+        }
+        if (nbHabitants != null) {
+            query.setParameter("nbHabitants", nbHabitants).setParameter("lastId", lastId);
+        }
+        return query.getResultList();
+    }
+
+    /**
+     * @return the number of cities
+     */
+    public long countVilles() {
+        return em.createQuery("SELECT COUNT(v) FROM Ville v", Long.class).getSingleResult();
+    }
+
+    /**
+     * Sums the population of every departement over its cities with a single aggregate query.
+     *
+     * @return the population of each departement, departements without cities included
+     */
+    public List<PopulationDepartement> getPopulationParDepartement() {
+        List<Object[]> rows = em.createQuery("SELECT d.code, d.nom, r.code, r.nom, COUNT(v), SUM(v.nbHabitants) "
+                        + "FROM Departement d LEFT JOIN d.region r LEFT JOIN d.villes v "
+                        + "GROUP BY d.code, d.nom, r.code, r.nom", Object[].class)
+                .getResultList();
+        List<PopulationDepartement> populations = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            long nbHabitants = row[5] == null ? 0 : ((Number) row[5]).longValue();
+            populations.add(new PopulationDepartement((String) row[0], (String) row[1], (String) row[2], (String) row[3],
+                    ((Number) row[4]).intValue(), nbHabitants));
+        }
+        return populations;
+    }
+
     /**
      * Retrieves a Ville entity by its ID.
      *
@@ -56,6 +195,63 @@ public class VilleDao {
         em.persist(ville);
     }
 
+    /**
+     * Inserts new cities with a single JDBC batch, without going through the persistence
+     * context. Their ids are reserved from the sequence of the cities by blocks of
+     * {@link Ville#ID_ALLOCATION_SIZE}, as Hibernate does, so both can insert cities.
+     * The departements of the cities must already have an id.
+     *
+     * @param villes the cities to insert
+     */
+    public void insertVillesBatch(List<Ville> villes) {
+        List<Integer> ids = nextVilleIds(villes.size());
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO ville "
+                    + "(id, code_ville, nom, nb_habitants, code_arrondissement, code_canton, departement_id) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < villes.size(); i++) {
+                    Ville ville = villes.get(i);
+                    statement.setInt(1, ids.get(i));
+                    statement.setString(2, ville.getCodeVille());
+                    statement.setString(3, ville.getNom());
+                    statement.setInt(4, ville.getNbHabitants());
+                    statement.setString(5, ville.getCodeArrondissement());
+                    statement.setString(6, ville.getCodeCanton());
+                    statement.setInt(7, ville.getDepartement().getId());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Reserves ids from the sequence of the cities. Each value of the sequence is the
+     * highest id of a block of {@link Ville#ID_ALLOCATION_SIZE} ids.
+     *
+     * @param count the number of ids
+     * @return the ids, in ascending order
+     */
+    private List<Integer> nextVilleIds(int count) {
+        List<Integer> ids = new ArrayList<>(count);
+        while (ids.size() < count) {
+            int hi = ((Number) em.createNativeQuery("SELECT NEXT VALUE FOR ville_seq").getSingleResult()).intValue();
+            for (int id = Math.max(1, hi - Ville.ID_ALLOCATION_SIZE + 1); id <= hi && ids.size() < count; id++) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Sends the pending statements to the database and detaches every managed entity,
+     * so that bulk writes keep a bounded persistence context.
+     */
+    public void flushAndClear() {
+        em.flush();
+        em.clear();
+    }
+
 
     /**
      * Updates an existing Ville entity.
@@ -77,6 +273,41 @@ public class VilleDao {
 
     }
 
+    /**
+     * Overwrites the census columns of a Ville with a single bulk update, without loading the entity.
+     *
+     * @param idVille            the ID of the Ville to update
+     * @param nom                the new name
+     * @param nbHabitants        the new population
+     * @param departement        the new department
+     * @param codeArrondissement the new arrondissement code
+     * @param codeCanton         the new canton code
+     */
+    public void updateVilleRecensee(int idVille, String nom, int nbHabitants, Departement departement,
+                                    String codeArrondissement, String codeCanton) {
+        em.createQuery("UPDATE Ville v SET v.nom = :nom, v.nbHabitants = :nbHabitants, v.departement = :departement, "
+                        + "v.codeArrondissement = :codeArrondissement, v.codeCanton = :codeCanton WHERE v.id = :id")
+                .setParameter("nom", nom)
+                .setParameter("nbHabitants", nbHabitants)
+                .setParameter("departement", departement)
+                .setParameter("codeArrondissement", codeArrondissement)
+                .setParameter("codeCanton", codeCanton)
+                .setParameter("id", idVille)
+                .executeUpdate();
+    }
+
+    /**
+     * Deletes several Ville entities with a single bulk delete.
+     *
+     * @param ids the IDs of the cities to delete
+     * @return the number of deleted cities
+     */
+    public int deleteVilles(List<Integer> ids) {
+        return em.createQuery("DELETE FROM Ville v WHERE v.id IN :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+
     /**
      * Deletes a Ville entity by its ID.
      *
@@ -0,0 +1,16 @@
+package fr.diginamic.hello.daos;
+
+/**
+ * The columns of a Ville compared by the census delta import.
+ *
+ * @param id                 the ID of the city
+ * @param codeVille          the code of the city
+ * @param nom                the name of the city
+ * @param nbHabitants        the population of the city
+ * @param codeDepartement    the code of the department of the city
+ * @param codeArrondissement the code of the arrondissement of the city
+ * @param codeCanton         the code of the canton of the city
+ */
+public record VilleRecensee(Integer id, String codeVille, String nom, int nbHabitants, String codeDepartement,
+                            String codeArrondissement, String codeCanton) {
+}
@@ -0,0 +1,15 @@
+package fr.diginamic.hello.daos;
+
+/**
+ * The columns of a Ville held by the in-memory indexes, read without loading entities.
+ *
+ * @param id              the ID of the city
+ * @param codeVille       the code of the city
+ * @param nom             the name of the city
+ * @param nbHabitants     the population of the city
+ * @param codeDepartement the code of the department of the city
+ * @param nomDepartement  the name of the department of the city
+ */
+public record VilleResume(Integer id, String codeVille, String nom, int nbHabitants,
+                          String codeDepartement, String nomDepartement) {
+}
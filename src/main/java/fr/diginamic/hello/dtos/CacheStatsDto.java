@@ -0,0 +1,83 @@
+package fr.diginamic.hello.dtos;
+
+/**
+ * The statistics of a cache, used to size it.
+ */
+public class CacheStatsDto {
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private int taille;
+    private int tailleMax;
+
+    public CacheStatsDto() {
+    }
+
+    public CacheStatsDto(long hits, long misses, long evictions, long invalidations, int taille, int tailleMax) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.taille = taille;
+        this.tailleMax = tailleMax;
+    }
+
+    /**
+     * @return the share of the lookups served by the cache, between 0 and 1
+     */
+    public double getHitRatio() {
+        long requetes = hits + misses;
+        return requetes == 0 ? 0 : (double) hits / requetes;
+    }
+
+    /* Getters and Setters */
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public void setInvalidations(long invalidations) {
+        this.invalidations = invalidations;
+    }
+
+    public int getTaille() {
+        return taille;
+    }
+
+    public void setTaille(int taille) {
+        this.taille = taille;
+    }
+
+    public int getTailleMax() {
+        return tailleMax;
+    }
+
+    public void setTailleMax(int tailleMax) {
+        this.tailleMax = tailleMax;
+    }
+}
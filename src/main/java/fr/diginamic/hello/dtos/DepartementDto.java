@@ -1,15 +1,15 @@
 package fr.diginamic.hello.dtos;
 
 
-import fr.diginamic.hello.entity.Ville;
-
 public class DepartementDto {
 
+    private Integer id;
     private String codeDepartement;
     private String nom;
     private int nbHabitants;
 
-    public DepartementDto(String codeDepartement, String nom, int nbHabitants) {
+    public DepartementDto(Integer id, String codeDepartement, String nom, int nbHabitants) {
+        this.id = id;
         this.codeDepartement = codeDepartement;
         this.nom = nom;
         this.nbHabitants = nbHabitants;
@@ -18,6 +18,14 @@ public class DepartementDto {
 
 
     /* Getters and Setters */
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
     public String getCode() {
         return codeDepartement;
     }
@@ -41,4 +49,4 @@ public class DepartementDto {
     public void setNbHabitants(int nbHabitants) {
         this.nbHabitants = nbHabitants;
     }
-}
\ No newline at end of file
+}
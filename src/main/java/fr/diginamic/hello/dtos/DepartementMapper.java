@@ -11,6 +11,7 @@ public class DepartementMapper {
      */
     public static DepartementDto toDepartementDto(Departement departement) {
         return new DepartementDto(
+                departement.getId(),
                 departement.getCode(),
                 departement.getNom(),
                 departement.getNombreHabitants()
@@ -0,0 +1,74 @@
+package fr.diginamic.hello.dtos;
+
+import fr.diginamic.hello.services.ImportJob;
+
+import java.time.LocalDateTime;
+
+public class ImportJobDto {
+
+    private String id;
+    private LocalDateTime debut;
+    private LocalDateTime fin;
+    private String erreur;
+    private ImportProgressDto progression;
+
+    public ImportJobDto() {
+    }
+
+    /**
+     * Takes a snapshot of an import job.
+     *
+     * @param job the job
+     * @return a DTO holding the state and the counters of the job
+     */
+    public static ImportJobDto of(ImportJob job) {
+        ImportJobDto dto = new ImportJobDto();
+        dto.id = job.getId();
+        dto.debut = job.getDebut();
+        dto.fin = job.getFin();
+        dto.erreur = job.getErreur();
+        dto.progression = ImportProgressDto.of(job.getEtat().name(), job.getProgress());
+        return dto;
+    }
+
+    /* Getters and Setters */
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getDebut() {
+        return debut;
+    }
+
+    public void setDebut(LocalDateTime debut) {
+        this.debut = debut;
+    }
+
+    public LocalDateTime getFin() {
+        return fin;
+    }
+
+    public void setFin(LocalDateTime fin) {
+        this.fin = fin;
+    }
+
+    public String getErreur() {
+        return erreur;
+    }
+
+    public void setErreur(String erreur) {
+        this.erreur = erreur;
+    }
+
+    public ImportProgressDto getProgression() {
+        return progression;
+    }
+
+    public void setProgression(ImportProgressDto progression) {
+        this.progression = progression;
+    }
+}
@@ -0,0 +1,111 @@
+package fr.diginamic.hello.dtos;
+
+import fr.diginamic.hello.services.ImportProgress;
+import fr.diginamic.hello.services.RejetLigne;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+public class ImportProgressDto {
+
+    private String etat;
+    private long lignesLues;
+    private Map<RejetLigne, Long> lignesRejetees;
+    private long lignesEnregistrees;
+    private long lotsValides;
+    private long debitCourant;
+    private long debitMoyen;
+    private List<ImportProgress.RejetEchantillon> echantillonsRejets;
+
+    public ImportProgressDto() {
+    }
+
+    /**
+     * Takes a snapshot of the counters of an import run.
+     *
+     * @param etat     the state of the import
+     * @param progress the progress of the import
+     * @return a DTO holding the current value of every counter
+     */
+    public static ImportProgressDto of(String etat, ImportProgress progress) {
+        ImportProgressDto dto = new ImportProgressDto();
+        dto.etat = etat;
+        dto.lignesLues = progress.getLignesLues();
+        dto.lignesRejetees = new EnumMap<>(RejetLigne.class);
+        for (RejetLigne raison : RejetLigne.values()) {
+            dto.lignesRejetees.put(raison, progress.getRejets(raison));
+        }
+        dto.lignesEnregistrees = progress.getLignesEnregistrees();
+        dto.lotsValides = progress.getLotsValides();
+        dto.debitCourant = progress.getDebitCourant();
+        dto.debitMoyen = progress.getDebitMoyen();
+        dto.echantillonsRejets = progress.getEchantillons();
+        return dto;
+    }
+
+    /* Getters and Setters */
+    public String getEtat() {
+        return etat;
+    }
+
+    public void setEtat(String etat) {
+        this.etat = etat;
+    }
+
+    public long getLignesLues() {
+        return lignesLues;
+    }
+
+    public void setLignesLues(long lignesLues) {
+        this.lignesLues = lignesLues;
+    }
+
+    public Map<RejetLigne, Long> getLignesRejetees() {
+        return lignesRejetees;
+    }
+
+    public void setLignesRejetees(Map<RejetLigne, Long> lignesRejetees) {
+        this.lignesRejetees = lignesRejetees;
+    }
+
+    public long getLignesEnregistrees() {
+        return lignesEnregistrees;
+    }
+
+    public void setLignesEnregistrees(long lignesEnregistrees) {
+        this.lignesEnregistrees = lignesEnregistrees;
+    }
+
+    public long getLotsValides() {
+        return lotsValides;
+    }
+
+    public void setLotsValides(long lotsValides) {
+        this.lotsValides = lotsValides;
+    }
+
+    public long getDebitCourant() {
+        return debitCourant;
+    }
+
+    public void setDebitCourant(long debitCourant) {
+        this.debitCourant = debitCourant;
+    }
+
+    public long getDebitMoyen() {
+        return debitMoyen;
+    }
+
+    public void setDebitMoyen(long debitMoyen) {
+        this.debitMoyen = debitMoyen;
+    }
+
+    public List<ImportProgress.RejetEchantillon> getEchantillonsRejets() {
+        return echantillonsRejets;
+    }
+
+    public void setEchantillonsRejets(List<ImportProgress.RejetEchantillon> echantillonsRejets) {
+        this.echantillonsRejets = echantillonsRejets;
+    }
+}
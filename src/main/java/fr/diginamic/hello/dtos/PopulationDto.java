@@ -0,0 +1,55 @@
+package fr.diginamic.hello.dtos;
+
+/**
+ * The population rollup of a region or a departement.
+ */
+public class PopulationDto {
+
+    private String code;
+    private String nom;
+    private int nbVilles;
+    private long nbHabitants;
+
+    public PopulationDto() {
+    }
+
+    public PopulationDto(String code, String nom, int nbVilles, long nbHabitants) {
+        this.code = code;
+        this.nom = nom;
+        this.nbVilles = nbVilles;
+        this.nbHabitants = nbHabitants;
+    }
+
+    /* Getters and Setters */
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public void setNom(String nom) {
+        this.nom = nom;
+    }
+
+    public int getNbVilles() {
+        return nbVilles;
+    }
+
+    public void setNbVilles(int nbVilles) {
+        this.nbVilles = nbVilles;
+    }
+
+    public long getNbHabitants() {
+        return nbHabitants;
+    }
+
+    public void setNbHabitants(long nbHabitants) {
+        this.nbHabitants = nbHabitants;
+    }
+}
@@ -0,0 +1,62 @@
+package fr.diginamic.hello.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of one item of a batch written through /villes/batch.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ResultatLotDto {
+
+    // Position of the item in the batch
+    private int index;
+    // ID of the city, null when the item was rejected before reaching a city
+    private Integer id;
+    // HTTP status the item would have received as a single request
+    private int statut;
+    // Reason of the rejection, null on success
+    private String message;
+
+    public ResultatLotDto() {
+    }
+
+    public ResultatLotDto(int index, Integer id, int statut, String message) {
+        this.index = index;
+        this.id = id;
+        this.statut = statut;
+        this.message = message;
+    }
+
+    /* Getters and Setters */
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public int getStatut() {
+        return statut;
+    }
+
+    public void setStatut(int statut) {
+        this.statut = statut;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,66 @@
+package fr.diginamic.hello.dtos;
+
+/**
+ * A city written through the batch endpoints of /villes/batch.
+ * The id is only read by updates.
+ */
+public class VilleLotDto {
+
+    private Integer id;
+    private String codeVille;
+    private String nom;
+    private int nbHabitants;
+    private String codeDepartement;
+
+    public VilleLotDto() {
+    }
+
+    public VilleLotDto(Integer id, String codeVille, String nom, int nbHabitants, String codeDepartement) {
+        this.id = id;
+        this.codeVille = codeVille;
+        this.nom = nom;
+        this.nbHabitants = nbHabitants;
+        this.codeDepartement = codeDepartement;
+    }
+
+    /* Getters and Setters */
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getCodeVille() {
+        return codeVille;
+    }
+
+    public void setCodeVille(String codeVille) {
+        this.codeVille = codeVille;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public void setNom(String nom) {
+        this.nom = nom;
+    }
+
+    public int getNbHabitants() {
+        return nbHabitants;
+    }
+
+    public void setNbHabitants(int nbHabitants) {
+        this.nbHabitants = nbHabitants;
+    }
+
+    public String getCodeDepartement() {
+        return codeDepartement;
+    }
+
+    public void setCodeDepartement(String codeDepartement) {
+        this.codeDepartement = codeDepartement;
+    }
+}
@@ -1,5 +1,6 @@
 package fr.diginamic.hello.dtos;
 
+import fr.diginamic.hello.daos.VilleResume;
 import fr.diginamic.hello.entity.Departement;
 import fr.diginamic.hello.entity.Ville;
 import org.springframework.stereotype.Component;
@@ -29,5 +30,15 @@ public class VilleMapper {
         );
     }
 
+    /**
+     * @param ville the columns of a city read by a projection
+     * @return - a VilleDto containing the Ville's code, name, population,
+     * department code, and department name
+     */
+    public static VilleDto toDto(VilleResume ville) {
+        return new VilleDto(ville.codeVille(), ville.nom(), ville.nbHabitants(),
+                ville.codeDepartement(), ville.nomDepartement());
+    }
+
 }
 
@@ -0,0 +1,52 @@
+package fr.diginamic.hello.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * A page of cities read with keyset pagination.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class VillesCurseurDto {
+
+    private List<VilleDto> villes;
+    // Token of the next page, null on the last page
+    private String suivant;
+    // Number of cities, only computed when asked for
+    private Long total;
+
+    public VillesCurseurDto() {
+    }
+
+    public VillesCurseurDto(List<VilleDto> villes, String suivant, Long total) {
+        this.villes = villes;
+        this.suivant = suivant;
+        this.total = total;
+    }
+
+    /* Getters and Setters */
+    public List<VilleDto> getVilles() {
+        return villes;
+    }
+
+    public void setVilles(List<VilleDto> villes) {
+        this.villes = villes;
+    }
+
+    public String getSuivant() {
+        return suivant;
+    }
+
+    public void setSuivant(String suivant) {
+        this.suivant = suivant;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+}
@@ -1,13 +1,18 @@
 package fr.diginamic.hello.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+// Only the changed columns are updated: the population total is changed by delta queries
+// while the departement may be loaded, and saving the departement must not write it back
 @Entity
+@DynamicUpdate
 @Table(name = "DEPARTEMENT")
 public class Departement {
 
@@ -27,13 +32,18 @@ public class Departement {
     private String nom;
 
     @Column(name = "NB_HABITANTS")
-    @Min(value = 1, message = "{departement.nombreHabitants.min}")
+    @Min(value = 0, message = "{departement.nombreHabitants.min}")
     private int nbHabitants;
 
+    // Region of the departement, null for departements created outside the census import
+    @ManyToOne
+    @JoinColumn(name = "region_id")
+    private Region region;
 
-    // Bidirectional OneToMany relationship with Ville
-    // JsonManagedReference to handle serialization
-    @OneToMany(mappedBy = "departement", cascade = CascadeType.ALL, fetch = FetchType.EAGER, orphanRemoval = true)
+    // Bidirectional OneToMany relationship with Ville, loaded only when accessed.
+    // The cities of a departement are read through the paged /departements/{code}/villes
+    @OneToMany(mappedBy = "departement", cascade = CascadeType.ALL, orphanRemoval = true)
+    @JsonIgnore
     private List<Ville> villes = new ArrayList<>();
 
     public Departement() {
@@ -79,6 +89,14 @@ public class Departement {
     }
 
 
+    public Region getRegion() {
+        return region;
+    }
+
+    public void setRegion(Region region) {
+        this.region = region;
+    }
+
     public List<Ville> getVilles() {
         return villes;
     }
@@ -0,0 +1,76 @@
+package fr.diginamic.hello.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A census file successfully imported into the database, identified by the checksum of its content.
+ */
+@Entity
+@Table(name = "IMPORT_RECENSEMENT", indexes = @Index(name = "IDX_IMPORT_CHECKSUM", columnList = "CHECKSUM"))
+public class ImportRecensement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    // SHA-256 of the content of the file, in hexadecimal
+    @Column(name = "CHECKSUM", nullable = false, length = 64)
+    private String checksum;
+
+    @Column(name = "NB_VILLES")
+    private int nbVilles;
+
+    @Column(name = "DATE_IMPORT", nullable = false)
+    private LocalDateTime dateImport;
+
+    public ImportRecensement() {
+    }
+
+    /**
+     * Constructor with parameters
+     *
+     * @param checksum   checksum of the content of the file
+     * @param nbVilles   number of cities read from the file
+     * @param dateImport date of the end of the import
+     */
+    public ImportRecensement(String checksum, int nbVilles, LocalDateTime dateImport) {
+        this.checksum = checksum;
+        this.nbVilles = nbVilles;
+        this.dateImport = dateImport;
+    }
+
+    /* Getters and Setters */
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public int getNbVilles() {
+        return nbVilles;
+    }
+
+    public void setNbVilles(int nbVilles) {
+        this.nbVilles = nbVilles;
+    }
+
+    public LocalDateTime getDateImport() {
+        return dateImport;
+    }
+
+    public void setDateImport(LocalDateTime dateImport) {
+        this.dateImport = dateImport;
+    }
+}
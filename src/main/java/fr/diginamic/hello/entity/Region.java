@@ -0,0 +1,82 @@
+package fr.diginamic.hello.entity;
+
+import jakarta.persistence.*;
+
+import java.util.Objects;
+
+/**
+ * A region of the census, grouping several departements.
+ */
+@Entity
+@Table(name = "REGION")
+public class Region {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "CODE", unique = true, nullable = false)
+    private String code;
+
+    @Column(name = "NOM")
+    private String nom;
+
+    public Region() {
+    }
+
+    /**
+     * Constructor with parameters
+     *
+     * @param code Code of the region
+     * @param nom  Name of the region
+     */
+    public Region(String code, String nom) {
+        this.code = code;
+        this.nom = nom;
+    }
+
+    /* Getters and Setters */
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public void setNom(String nom) {
+        this.nom = nom;
+    }
+
+    @Override
+    public String toString() {
+        return STR."Region{code='\{code}', nom='\{nom}'}";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Region region = (Region) o;
+
+        return Objects.equals(code, region.code);
+    }
+
+    @Override
+    public int hashCode() {
+        return code != null ? code.hashCode() : 0;
+    }
+}
@@ -2,15 +2,25 @@ package fr.diginamic.hello.entity;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
+import org.hibernate.Hibernate;
 
 import java.util.Objects;
 
 @Entity
-@Table(name = "VILLE")
+// Supports the keyset pagination by descending population
+@Table(name = "VILLE", indexes = @Index(name = "IDX_VILLE_POPULATION", columnList = "NB_HABITANTS, id"))
 public class Ville {
 
+    /**
+     * Number of ids reserved by each call to the sequence of the cities.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Sequence-based ids let Hibernate group inserts into JDBC batches,
+    // which IDENTITY columns prevent
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ville_seq")
+    @SequenceGenerator(name = "ville_seq", sequenceName = "VILLE_SEQ", allocationSize = ID_ALLOCATION_SIZE)
     @Positive(message = "{ville.id.positive}")
     private Integer id;
 
@@ -28,6 +38,13 @@ public class Ville {
     @Min(value = 1, message = "{ville.nbHabitants.min}")
     private int nbHabitants;
 
+    // Codes of the arrondissement and canton of the city within its departement
+    @Column(name = "CODE_ARRONDISSEMENT")
+    private String codeArrondissement;
+
+    @Column(name = "CODE_CANTON")
+    private String codeCanton;
+
     // Bidirectional ManyToOne relationship with Departement
     // JsonBackReference to handle serialization
     @ManyToOne(fetch = FetchType.LAZY)
@@ -59,13 +76,15 @@ public class Ville {
         return departement;
     }
 
-    /* Setter that manages the bidirectional relationship */
+    /* Setter that manages the bidirectional relationship.
+     * Collections not loaded yet are left alone: they will be read with the change */
     public void setDepartement(Departement departement) {
-        if (this.departement != null) {
+        if (this.departement != null && Hibernate.isInitialized(this.departement.getVilles())) {
             this.departement.getVilles().remove(this);
         }
         this.departement = departement;
-        if (departement != null && !departement.getVilles().contains(this)) {
+        if (departement != null && Hibernate.isInitialized(departement.getVilles())
+                && !departement.getVilles().contains(this)) {
             departement.getVilles().add(this);
         }
     }
@@ -102,6 +121,22 @@ public class Ville {
         this.nbHabitants = nbHabitants;
     }
 
+    public String getCodeArrondissement() {
+        return codeArrondissement;
+    }
+
+    public void setCodeArrondissement(String codeArrondissement) {
+        this.codeArrondissement = codeArrondissement;
+    }
+
+    public String getCodeCanton() {
+        return codeCanton;
+    }
+
+    public void setCodeCanton(String codeCanton) {
+        this.codeCanton = codeCanton;
+    }
+
     @Override
     public String toString() {
         return STR."Ville{nom='\{nom}', nbHabitants=\{nbHabitants}}";
@@ -1,11 +1,49 @@
 package fr.diginamic.hello.repository;
 
+import fr.diginamic.hello.daos.EcartPopulation;
+import fr.diginamic.hello.dtos.DepartementDto;
 import fr.diginamic.hello.entity.Departement;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface DepartementRepository extends JpaRepository<Departement, Integer> {
 
+    // Summaries of the departements, read from the DEPARTEMENT table alone
+    String SELECT_DTO = "SELECT new fr.diginamic.hello.dtos.DepartementDto(d.id, d.code, d.nom, d.nbHabitants) "
+            + "FROM Departement d ";
+
     Departement findByCode(String code);
-}
\ No newline at end of file
+
+    boolean existsByCode(String code);
+
+    List<Departement> findByCodeIn(Collection<String> codes);
+
+    @Query(SELECT_DTO + "ORDER BY d.code")
+    List<DepartementDto> findAllDto();
+
+    @Query(SELECT_DTO + "WHERE d.id = :id")
+    Optional<DepartementDto> findDtoById(int id);
+
+    @Query(SELECT_DTO + "WHERE d.code = :code")
+    Optional<DepartementDto> findDtoByCode(String code);
+
+    // Adjusts the total in the database rather than writing back a value read earlier,
+    // so concurrent changes to the cities of a departement are all counted
+    @Modifying
+    @Query("UPDATE Departement d SET d.nbHabitants = d.nbHabitants + :delta WHERE d.code = :code")
+    int addNbHabitants(String code, int delta);
+
+    // Departements whose total differs from the sum of the populations of their cities
+    @Query("SELECT new fr.diginamic.hello.daos.EcartPopulation(d.id, d.code, d.nbHabitants, COALESCE(SUM(v.nbHabitants), 0L)) "
+            + "FROM Departement d LEFT JOIN d.villes v "
+            + "GROUP BY d.id, d.code, d.nbHabitants "
+            + "HAVING d.nbHabitants <> COALESCE(SUM(v.nbHabitants), 0L)")
+    List<EcartPopulation> findEcartsPopulation();
+}
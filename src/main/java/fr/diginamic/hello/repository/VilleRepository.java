@@ -1,30 +1,97 @@
 package fr.diginamic.hello.repository;
 
+import fr.diginamic.hello.dtos.VilleDto;
 import fr.diginamic.hello.entity.Ville;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface VilleRepository extends JpaRepository<Ville, Integer> {
 
+    // Reads returning VilleDto select the five columns of the DTO with a single join on the
+    // departement: no managed entity, no dirty checking and no lazy load per departement
+    String SELECT_DTO = "SELECT new fr.diginamic.hello.dtos.VilleDto(v.codeVille, v.nom, v.nbHabitants, d.code, d.nom) "
+            + "FROM Ville v JOIN v.departement d ";
+    // Rows fetched from the driver at a time by the streamed reads
+    String STREAM_FETCH_SIZE = "500";
+
     Page<Ville> findAll(Pageable pageable);
 
+    @Query(value = SELECT_DTO, countQuery = "SELECT COUNT(v) FROM Ville v")
+    Page<VilleDto> findAllDto(Pageable pageable);
+
+    @Query(SELECT_DTO)
+    List<VilleDto> findAllDto();
+
     Ville findByNomIgnoreCase(String nom);
 
+    // Cities changed by a batch, with their departement so the state before the change is read without more selects
+    @Query("SELECT v FROM Ville v JOIN FETCH v.departement WHERE v.id IN :ids")
+    List<Ville> findWithDepartementByIdIn(Collection<Integer> ids);
+
+    @Query("SELECT v.id, v.codeVille FROM Ville v WHERE v.codeVille IN :codes")
+    List<Object[]> findIdsByCodeVilleIn(Collection<String> codes);
+
+    @Query(SELECT_DTO + "WHERE v.id = :id")
+    Optional<VilleDto> findDtoById(int id);
+
+    @Query(SELECT_DTO + "WHERE UPPER(v.nom) = UPPER(:nom)")
+    VilleDto findDtoByNomIgnoreCase(String nom);
+
     List<Ville> findByNomStartingWithIgnoreCase(String prefix);
 
+    @Query(SELECT_DTO + "WHERE UPPER(v.nom) LIKE UPPER(CONCAT(:#{escape([0])}, '%')) ESCAPE :#{escapeCharacter()}")
+    List<VilleDto> findDtoByNomStartingWithIgnoreCase(String prefix);
+
     List<Ville> findByNbHabitantsGreaterThanOrderByNbHabitantsDesc(int min);
 
+    @Query(SELECT_DTO + "WHERE v.nbHabitants > :min ORDER BY v.nbHabitants DESC")
+    List<VilleDto> findDtoByNbHabitantsGreaterThanOrderByNbHabitantsDesc(int min);
+
     List<Ville> findByNbHabitantsBetweenOrderByNbHabitantsDesc(int min, int max);
 
+    @Query(SELECT_DTO + "WHERE v.nbHabitants BETWEEN :min AND :max ORDER BY v.nbHabitants DESC")
+    List<VilleDto> findDtoByNbHabitantsBetweenOrderByNbHabitantsDesc(int min, int max);
+
+    // Forward-only reads of the population queries.
+    // The stream must be consumed and closed within a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SELECT_DTO + "WHERE v.nbHabitants > :min ORDER BY v.nbHabitants DESC")
+    Stream<VilleDto> streamDtoByNbHabitantsGreaterThanOrderByNbHabitantsDesc(int min);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SELECT_DTO + "WHERE v.nbHabitants BETWEEN :min AND :max ORDER BY v.nbHabitants DESC")
+    Stream<VilleDto> streamDtoByNbHabitantsBetweenOrderByNbHabitantsDesc(int min, int max);
+
     List<Ville> findByDepartement_CodeAndNbHabitantsGreaterThanOrderByNbHabitantsDesc(String codeDepartement, int min);
 
+    @Query(SELECT_DTO + "WHERE d.code = :codeDepartement AND v.nbHabitants > :min ORDER BY v.nbHabitants DESC")
+    List<VilleDto> findDtoByDepartement_CodeAndNbHabitantsGreaterThanOrderByNbHabitantsDesc(String codeDepartement, int min);
+
     List<Ville> findByDepartement_CodeAndNbHabitantsBetweenOrderByNbHabitantsDesc(String codeDepartement, int min, int max);
 
+    @Query(SELECT_DTO + "WHERE d.code = :codeDepartement AND v.nbHabitants BETWEEN :min AND :max ORDER BY v.nbHabitants DESC")
+    List<VilleDto> findDtoByDepartement_CodeAndNbHabitantsBetweenOrderByNbHabitantsDesc(String codeDepartement, int min, int max);
+
     Page<Ville> findByDepartement_CodeOrderByNbHabitantsDesc(String codeDepartement, Pageable pageable);
 
+    @Query(SELECT_DTO + "WHERE d.code = :codeDepartement ORDER BY v.nbHabitants DESC")
+    List<VilleDto> findDtoByDepartement_CodeOrderByNbHabitantsDesc(String codeDepartement, Limit limit);
+
+    @Query(value = SELECT_DTO + "WHERE d.code = :codeDepartement ORDER BY v.nbHabitants DESC",
+            countQuery = "SELECT COUNT(v) FROM Ville v WHERE v.departement.code = :codeDepartement")
+    Page<VilleDto> findDtoByDepartement_CodeOrderByNbHabitantsDesc(String codeDepartement, Pageable pageable);
+
 }
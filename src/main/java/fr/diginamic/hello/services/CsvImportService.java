@@ -1,107 +1,659 @@
 package fr.diginamic.hello.services;
 
+import fr.diginamic.hello.daos.ImportRecensementDao;
+import fr.diginamic.hello.daos.RegionDao;
 import fr.diginamic.hello.daos.VilleDao;
 import fr.diginamic.hello.daos.DepartementDao;
+import fr.diginamic.hello.daos.VilleRecensee;
+import fr.diginamic.hello.entity.ImportRecensement;
+import fr.diginamic.hello.entity.Region;
 import fr.diginamic.hello.entity.Ville;
 import fr.diginamic.hello.entity.Departement;
-import jakarta.transaction.Transactional;
+import fr.diginamic.hello.repository.DepartementRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class CsvImportService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(CsvImportService.class);
+
     // The VilleDao is injected here to interact with the database
     private final VilleDao villeDao;
     // The DepartementDao is injected here to interact with the database
     private final DepartementDao departementDao;
+    // Adds the changes of the population totals, like the writes of VilleService
+    private final DepartementRepository departementRepository;
+    // The RegionDao is injected here to interact with the database
+    private final RegionDao regionDao;
+    // Keeps track of the imported files
+    private final ImportRecensementDao importRecensementDao;
+    // Publishes the progress of the running import
+    private final ImportMonitor importMonitor;
+    // Tells the rollups and indexes built from the dataset that it has been reloaded
+    private final ApplicationEventPublisher eventPublisher;
+    // Each chunk of the import is committed in its own transaction
+    private final TransactionTemplate transactionTemplate;
+    // Number of rows after which the persistence context is flushed and cleared
+    private final int batchSize;
+    // Number of rows committed together
+    private final int chunkSize;
+    // Whether the file is parsed on the fork-join pool rather than on the importing thread
+    private final boolean parallelParsing;
+    // Whether a changed file is applied to a database that already holds cities
+    private final boolean deltaEnabled;
+    // Binary snapshot of the last imported file, null when snapshots are disabled
+    private final Path snapshotPath;
+    // Whether the cities read from the snapshot are inserted with plain JDBC batches rather than through JPA
+    private final boolean snapshotJdbcInserts;
+    // Only one import may write at a time; taken before its progress is started and
+    // released at its end, possibly by another thread
+    private final Semaphore importLock = new Semaphore(1);
 
     /**
-     * Constructor to inject the VilleDao dependency.
+     * Constructor to inject the dependencies of the import.
      *
-     * @param villeDao the VilleDao instance to be used by this service
+     * @param villeDao             the VilleDao instance to be used by this service
+     * @param departementDao       the DepartementDao instance to be used by this service
+     * @param departementRepository the repository adding the changes of the population totals
+     * @param regionDao            the RegionDao instance to be used by this service
+     * @param importRecensementDao the ImportRecensementDao instance to be used by this service
+     * @param importMonitor        the monitor publishing the progress of the import
+     * @param eventPublisher       publishes the end of each import
+     * @param transactionManager   the transaction manager used to commit each chunk
+     * @param batchSize            the number of rows between two flush/clear of the persistence context
+     * @param chunkSize            the number of rows committed in a single transaction
+     * @param parser               the parser mode, {@code parallel} or {@code sequential}
+     * @param deltaEnabled         whether changed files are applied as a delta on a populated database
+     * @param snapshotPath         the path of the binary snapshot of the imported file, empty to disable it
+     * @param snapshotInserts      how the cities read from the snapshot are inserted, {@code jdbc} or {@code jpa}
      */
-    public CsvImportService(VilleDao villeDao, DepartementDao departementDao) {
+    public CsvImportService(VilleDao villeDao, DepartementDao departementDao, DepartementRepository departementRepository,
+                            RegionDao regionDao, ImportRecensementDao importRecensementDao, ImportMonitor importMonitor,
+                            ApplicationEventPublisher eventPublisher,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${recensement.import.batch-size:500}") int batchSize,
+                            @Value("${recensement.import.chunk-size:5000}") int chunkSize,
+                            @Value("${recensement.import.parser:parallel}") String parser,
+                            @Value("${recensement.import.delta.enabled:true}") boolean deltaEnabled,
+                            @Value("${recensement.snapshot.path:}") String snapshotPath,
+                            @Value("${recensement.snapshot.inserts:jdbc}") String snapshotInserts) {
+        if (batchSize < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Les tailles de lot et de bloc de l'import doivent être supérieures à 0");
+        }
+        if (!"parallel".equals(parser) && !"sequential".equals(parser)) {
+            throw new IllegalArgumentException("Mode de lecture du CSV inconnu : " + parser);
+        }
+        if (!"jdbc".equals(snapshotInserts) && !"jpa".equals(snapshotInserts)) {
+            throw new IllegalArgumentException("Mode d'insertion du snapshot inconnu : " + snapshotInserts);
+        }
         this.villeDao = villeDao;
         this.departementDao = departementDao;
+        this.departementRepository = departementRepository;
+        this.regionDao = regionDao;
+        this.importRecensementDao = importRecensementDao;
+        this.importMonitor = importMonitor;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+        this.parallelParsing = "parallel".equals(parser);
+        this.deltaEnabled = deltaEnabled;
+        this.snapshotPath = snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.snapshotJdbcInserts = "jdbc".equals(snapshotInserts);
     }
 
     /**
      * Imports data from a CSV file into the database.
+     * <p>
+     * The file is streamed line by line and written in chunks: every chunk is committed
+     * in its own transaction and the persistence context is flushed and cleared every
+     * {@code batchSize} rows, so heap use does not depend on the size of the file.
+     * Departements are resolved from an in-memory map kept for the whole run, and the
+     * changes of their population totals are summed in memory and added once at the end of
+     * each chunk, so the cities written meanwhile through {@link VilleService} stay counted.
+     * The file is parsed either on the importing thread or, in {@code parallel} mode,
+     * from memory-mapped ranges on the fork-join pool; both produce the same lines.
+     * <p>
+     * A file whose checksum matches the last imported file is skipped. When the database
+     * already holds cities, only the added, changed and removed cities are written.
+     * <p>
+     * The lines kept by the import are also written to a binary snapshot. When the snapshot
+     * was made from the same file, it is read instead of the CSV: no parsing nor validation,
+     * a single sequential read feeding the same chunks, whose new cities are inserted with
+     * plain JDBC batches instead of being persisted one by one. A snapshot that cannot be
+     * read or fails its integrity check is deleted and the CSV is imported instead.
      *
      * @param csvFilePath the path to the CSV file
+     * @throws IllegalStateException if another import is running
      */
-    @Transactional
     public void importData(String csvFilePath) {
-        List<Ville> villes = villeDao.getAllVilles();
+        Path path = Path.of(csvFilePath);
+        // The file is compared with the last import under the lock, so two concurrent
+        // imports of the same file never both apply it
+        acquireImportLock();
+        String checksum;
+        String lastChecksum;
+        try {
+            checksum = checksum(path);
+            lastChecksum = transactionTemplate.execute(status -> importRecensementDao.getLastChecksum());
+        } catch (RuntimeException e) {
+            importLock.release();
+            throw e;
+        }
+        if (checksum.equals(lastChecksum)) {
+            LOGGER.info("Import CSV ignoré : {} n'a pas changé depuis le dernier import", csvFilePath);
+            try {
+                eventPublisher.publishEvent(new RecensementModifie());
+            } finally {
+                importLock.release();
+            }
+            return;
+        }
+
+        ImportProgress progress = importMonitor.startRun();
+        runImport(() -> {
+            if (snapshotPath != null && checksum.equals(RecensementSnapshot.readChecksum(snapshotPath))) {
+                try {
+                    LOGGER.info("Import CSV depuis le snapshot {}", snapshotPath);
+                    applyImport(progress, () -> checksum, null, snapshotJdbcInserts, writer ->
+                            RecensementSnapshot.read(snapshotPath, chunkSize, lignes -> {
+                                progress.addLignesLues(lignes.size());
+                                writer.accept(lignes);
+                            }));
+                    return;
+                } catch (IOException e) {
+                    // The CSV import below compares the file with the database, so it also
+                    // repairs the chunks of a snapshot that failed while being read
+                    LOGGER.warn("Snapshot {} illisible, import depuis le CSV : {}", snapshotPath, e.getMessage());
+                    Files.deleteIfExists(snapshotPath);
+                }
+            }
+
+            // A snapshot rejected before its first block leaves the progress untouched
+            ImportProgress csvProgress = progress.getLignesLues() == 0 ? progress : importMonitor.startRun();
+            applyImport(csvProgress, () -> checksum, snapshotPath, false, writer -> {
+                if (parallelParsing) {
+                    new ParallelRecensementCsvParser(ForkJoinPool.commonPool()).parse(path, csvProgress, writer);
+                } else {
+                    try (BufferedReader br = new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8))) {
+                        RecensementCsvParser.parse(br, chunkSize, csvProgress, writer);
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * Takes the import lock and starts the progress of a new import, so that an import
+     * rejected because another one is running never replaces the progress of the running one.
+     * The lock is released at the end of the import started with the returned progress.
+     *
+     * @return the progress of the new import
+     * @throws IllegalStateException if another import is running
+     */
+    public ImportProgress startImport() {
+        acquireImportLock();
+        return importMonitor.startRun();
+    }
+
+    private void acquireImportLock() {
+        if (!importLock.tryAcquire()) {
+            throw new IllegalStateException("Un import du recensement est déjà en cours");
+        }
+    }
+
+    /**
+     * @return whether an import, from the startup file or from an upload, is running
+     */
+    public boolean isImportRunning() {
+        return importLock.availablePermits() == 0;
+    }
+
+    /**
+     * Releases the import lock taken by {@link #startImport()} for an import that will not run.
+     */
+    void cancelImport() {
+        importLock.release();
+    }
+
+    /**
+     * Imports data from CSV content received by upload.
+     * <p>
+     * The content is parsed as it is received and written chunk by chunk, so memory use
+     * does not depend on its size and it is never stored. Its checksum is computed on the
+     * fly and recorded at the end of the import.
+     *
+     * @param in       the uploaded CSV content, left open
+     * @param progress the progress returned by {@link #startImport()}
+     */
+    public void importData(InputStream in, ImportProgress progress) {
+        MessageDigest digest = sha256();
+
+        runImport(() -> applyImport(progress, () -> HexFormat.of().formatHex(digest.digest()), null, false, writer -> {
+            BufferedReader br = new BufferedReader(new InputStreamReader(new DigestInputStream(in, digest), StandardCharsets.UTF_8));
+            RecensementCsvParser.parse(br, chunkSize, progress, writer);
+        }));
+    }
+
+    /**
+     * Runs an import started under the import lock, releases the lock and publishes a
+     * {@link RecensementModifie} event once it is over.
+     *
+     * @param task the import
+     */
+    private void runImport(ImportTask task) {
+        try {
+            task.run();
+        } catch (IOException e) {
+            throw new RuntimeException("Erreur lors de la lecture du CSV", e);
+        } finally {
+            try {
+                // Committed chunks have changed the dataset even if the import failed; the
+                // new version is published before the import is seen as over
+                eventPublisher.publishEvent(new RecensementModifie());
+            } finally {
+                importLock.release();
+            }
+        }
+    }
+
+    /**
+     * Parses content into a new writer and records its checksum once the whole content is written.
+     *
+     * @param progress    the progress of the import
+     * @param checksum    gives the checksum of the content once it has been parsed
+     * @param snapshot    the path of the snapshot to write, or null to leave the snapshot alone
+     * @param jdbcInserts whether the new cities are inserted with plain JDBC batches
+     * @param source      parses the content into the writer
+     * @throws IOException if the content cannot be read
+     */
+    private void applyImport(ImportProgress progress, Supplier<String> checksum, Path snapshot, boolean jdbcInserts,
+                             CsvSource source) throws IOException {
+        ChunkWriter writer = newChunkWriter(progress);
+        if (writer == null) {
+            return;
+        }
+        writer.jdbcInserts = jdbcInserts;
+
+        RecensementSnapshot.Writer snapshotWriter = snapshot == null ? null : createSnapshot(snapshot, checksum.get());
+        writer.snapshot = snapshotWriter;
+        try {
+            source.parse(writer);
+            writer.finish(checksum.get());
+            commitSnapshot(writer.snapshot);
+        } finally {
+            closeSnapshot(snapshotWriter);
+        }
+    }
+
+    /**
+     * Import run under the import lock.
+     */
+    @FunctionalInterface
+    private interface ImportTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * Parses CSV content into the writer of an import.
+     */
+    @FunctionalInterface
+    private interface CsvSource {
+        void parse(ChunkWriter writer) throws IOException;
+    }
+
+    /**
+     * Starts the snapshot of an import. A snapshot that cannot be written does not fail the import.
+     *
+     * @param path     the path of the snapshot
+     * @param checksum the checksum of the imported file
+     * @return the writer of the snapshot, or null if it cannot be created
+     */
+    private static RecensementSnapshot.Writer createSnapshot(Path path, String checksum) {
+        try {
+            return RecensementSnapshot.create(path, checksum);
+        } catch (IOException e) {
+            LOGGER.warn("Snapshot du recensement non créé : {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void commitSnapshot(RecensementSnapshot.Writer snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            snapshot.commit();
+        } catch (IOException e) {
+            LOGGER.warn("Snapshot du recensement non enregistré : {}", e.getMessage());
+        }
+    }
 
-        if (!villes.isEmpty()) {
+    private static void closeSnapshot(RecensementSnapshot.Writer snapshot) {
+        if (snapshot == null) {
             return;
         }
-        Set<String> seenCodes = new HashSet<>();
+        try {
+            snapshot.close();
+        } catch (IOException e) {
+            LOGGER.warn("Snapshot du recensement non supprimé : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Prepares the writer of an import, in full mode on an empty database and in delta mode otherwise.
+     *
+     * @param progress the progress of the import
+     * @return the writer of the import, or null if the database already holds cities and delta imports are disabled
+     */
+    private ChunkWriter newChunkWriter(ImportProgress progress) {
+        boolean populated = Boolean.TRUE.equals(transactionTemplate.execute(status -> villeDao.hasVilles()));
+        if (populated && !deltaEnabled) {
+            return null;
+        }
+
+        Map<String, Region> regions = new HashMap<>();
+        for (Region region : transactionTemplate.execute(status -> regionDao.getAllRegions())) {
+            regions.put(region.getCode(), region);
+        }
+
+        Map<String, Departement> departements = new HashMap<>();
+        List<Departement> existingDepartements = transactionTemplate.execute(status -> departementDao.getAllDepartementWithoutVilles());
+        for (Departement departement : existingDepartements) {
+            departements.put(departement.getCode(), departement);
+        }
+
+        if (!populated) {
+            return new ChunkWriter(regions, departements, null, progress);
+        }
 
+        Map<String, VilleRecensee> existingVilles = new HashMap<>();
+        List<VilleRecensee> villes = transactionTemplate.execute(status -> villeDao.getVillesRecensees());
+        for (VilleRecensee ville : villes) {
+            existingVilles.put(ville.codeVille(), ville);
+        }
+        return new ChunkWriter(regions, departements, existingVilles, progress);
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(csvFilePath))) {
-            String line;
-            br.readLine();
+    /**
+     * Computes the SHA-256 checksum of a file.
+     *
+     * @param path the path of the file
+     * @return the checksum, in hexadecimal
+     */
+    static String checksum(Path path) {
+        try (InputStream in = Files.newInputStream(path)) {
+            MessageDigest digest = sha256();
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new RuntimeException("Erreur lors de la lecture du CSV", e);
+        }
+    }
 
-            while ((line = br.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-                String[] tokens = line.split(";");
+    /**
+     * Receives the parsed lines in file order, drops duplicate city codes
+     * and persists the remaining lines chunk by chunk.
+     * <p>
+     * In delta mode the writer is given the cities already in the database: unchanged
+     * cities are left alone, changed cities are updated and the cities missing from the
+     * file are deleted once the whole file has been read. The totals of the departements
+     * are adjusted by the population of the cities inserted, updated and deleted.
+     */
+    private final class ChunkWriter implements Consumer<List<LigneRecensement>> {
 
-                if (tokens.length < 8) continue;
+        private final Map<String, Region> regions;
+        private final Map<String, Departement> departements;
+        // Cities of the database not read from the file yet, by code; null for a full import
+        private final Map<String, VilleRecensee> existingVilles;
+        private final ImportProgress progress;
+        // Receives the kept lines, null when no snapshot is written
+        private RecensementSnapshot.Writer snapshot;
+        // Whether the new cities are inserted with plain JDBC batches, for lines already validated
+        private boolean jdbcInserts;
+        private final Set<String> seenCodes = new HashSet<>();
+        // Departements of the lines of the current chunk, inserted with it when they are new
+        private final Set<Departement> touched = new LinkedHashSet<>();
+        // Changes of the population totals of the current chunk, by departement code
+        private final Map<String, Integer> ecarts = new HashMap<>();
+        private final List<LigneRecensement> inserts = new ArrayList<>();
+        private final Map<Integer, LigneRecensement> updates = new LinkedHashMap<>();
+        private final long start = System.nanoTime();
+        private long written;
+        private int inserted;
+        private int updated;
 
-                String codeDepartement = tokens[2].trim();
-                String codeVille = tokens[5].trim();
-                String nom = tokens[6].trim();
-                String nbHab = tokens[7].trim();
-                String nbHabTotal = tokens[9].trim();
+        private ChunkWriter(Map<String, Region> regions, Map<String, Departement> departements,
+                            Map<String, VilleRecensee> existingVilles, ImportProgress progress) {
+            this.regions = regions;
+            this.departements = departements;
+            this.existingVilles = existingVilles;
+            this.progress = progress;
+        }
 
-                if(codeDepartement.isEmpty()) continue;
-                if (nom.length() < 2 || nom.length() > 255) continue;
-                if (codeVille.isEmpty() || seenCodes.contains(codeVille)) continue;
-                int nbHabitants;
-                try {
-                    nbHabitants = Integer.parseInt(nbHab.replaceAll("\\s", ""));
-                    if (nbHabitants < 1) continue;
-                } catch (NumberFormatException e) {
+        @Override
+        public void accept(List<LigneRecensement> lignes) {
+            for (LigneRecensement ligne : lignes) {
+                if (!seenCodes.add(ligne.codeVille())) {
+                    progress.rejet(RejetLigne.CODE_DUPLIQUE, ligne.codeDepartement() + ";" + ligne.codeVille() + ";" + ligne.nom());
                     continue;
                 }
-                int nbHabitantsTotal;
-                try {
-                    nbHabitantsTotal = Integer.parseInt(nbHabTotal.replaceAll("\\s", ""));
-                    if (nbHabitantsTotal < 1) continue;
-                } catch (NumberFormatException e) {
-                    continue;
+                writeSnapshot(ligne);
+
+                Departement dep = departements.computeIfAbsent(ligne.codeDepartement(), code -> {
+                    Departement departement = new Departement();
+                    departement.setCode(code);
+                    departement.setNom("Departement " + code);
+                    if (!ligne.codeRegion().isEmpty()) {
+                        departement.setRegion(regions.computeIfAbsent(ligne.codeRegion(),
+                                codeRegion -> new Region(codeRegion, ligne.nomRegion())));
+                    }
+                    return departement;
+                });
+                touched.add(dep);
+
+                VilleRecensee previous = existingVilles == null ? null : existingVilles.remove(ligne.codeVille());
+                if (previous == null) {
+                    inserts.add(ligne);
+                    ecarts.merge(ligne.codeDepartement(), ligne.nbHabitants(), Integer::sum);
+                } else if (hasChanged(previous, ligne)) {
+                    updates.put(previous.id(), ligne);
+                    ecarts.merge(previous.codeDepartement(), -previous.nbHabitants(), Integer::sum);
+                    ecarts.merge(ligne.codeDepartement(), ligne.nbHabitants(), Integer::sum);
+                }
+
+                if (inserts.size() + updates.size() == chunkSize) {
+                    writeChunk();
+                }
+            }
+        }
+
+        /**
+         * Writes the last chunk, deletes the cities missing from the file along with their
+         * population, records the import and logs its throughput.
+         *
+         * @param checksum the checksum of the imported file
+         */
+        private void finish(String checksum) {
+            writeChunk();
+
+            int deleted = 0;
+            if (existingVilles != null && !existingVilles.isEmpty()) {
+                List<VilleRecensee> villes = List.copyOf(existingVilles.values());
+                for (int from = 0; from < villes.size(); from += chunkSize) {
+                    List<VilleRecensee> villesChunk = villes.subList(from, Math.min(villes.size(), from + chunkSize));
+                    Integer count = transactionTemplate.execute(status -> {
+                        int supprimees = villeDao.deleteVilles(villesChunk.stream().map(VilleRecensee::id).toList());
+                        Map<String, Integer> ecartsChunk = new HashMap<>();
+                        for (VilleRecensee ville : villesChunk) {
+                            ecartsChunk.merge(ville.codeDepartement(), -ville.nbHabitants(), Integer::sum);
+                        }
+                        addNbHabitants(ecartsChunk);
+                        return supprimees;
+                    });
+                    deleted += count == null ? 0 : count;
+                }
+            }
+
+            int nbVilles = seenCodes.size();
+            transactionTemplate.executeWithoutResult(status ->
+                    importRecensementDao.insertImport(new ImportRecensement(checksum, nbVilles, LocalDateTime.now())));
+
+            LOGGER.info("Import CSV terminé : {} villes ajoutées, {} modifiées, {} supprimées en {} ms ({} lignes/s)",
+                    inserted, updated, deleted, (System.nanoTime() - start) / 1_000_000, rowsPerSecond(written, start));
+        }
+
+        /**
+         * Persists the pending inserts and updates in a single transaction, flushing and
+         * clearing the persistence context every {@code batchSize} rows, then adds their
+         * changes to the population totals of the departements.
+         */
+        private void writeChunk() {
+            if (inserts.isEmpty() && updates.isEmpty() && touched.isEmpty()) {
+                return;
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Departement dep : touched) {
+                    if (dep.getRegion() != null && dep.getRegion().getId() == null) {
+                        regionDao.insertRegion(dep.getRegion());
+                    }
+                    if (dep.getId() == null) {
+                        departementDao.insertDepartement(dep);
+                    }
                 }
 
-                Departement dep = departementDao.getDepartementByCode(codeDepartement);
-                if (dep == null) {
-                    dep = new Departement();
-                    dep.setCode(codeDepartement);
-                    dep.setNom("Departement " + codeDepartement);
-                    dep.setNombreHabitants(nbHabitantsTotal);
-                    departementDao.insertDepartement(dep);
+                if (jdbcInserts) {
+                    List<Ville> villes = inserts.stream().map(this::newVille).toList();
+                    for (int from = 0; from < villes.size(); from += batchSize) {
+                        villeDao.insertVillesBatch(villes.subList(from, Math.min(villes.size(), from + batchSize)));
+                    }
                 } else {
-                    dep.setNombreHabitants(nbHabitantsTotal + dep.getNombreHabitants());
-                    departementDao.updateDepartement(dep.getId(), dep);
+                    int count = 0;
+                    for (LigneRecensement ligne : inserts) {
+                        villeDao.insertVille(newVille(ligne));
+
+                        if (++count % batchSize == 0) {
+                            villeDao.flushAndClear();
+                        }
+                    }
+                }
+                for (Map.Entry<Integer, LigneRecensement> update : updates.entrySet()) {
+                    LigneRecensement ligne = update.getValue();
+                    villeDao.updateVilleRecensee(update.getKey(), ligne.nom(), ligne.nbHabitants(),
+                            departements.get(ligne.codeDepartement()), ligne.codeArrondissement(), ligne.codeCanton());
                 }
 
-                Ville ville = new Ville(codeVille, nom, nbHabitants, dep);
+                villeDao.flushAndClear();
+                addNbHabitants(ecarts);
+            });
 
-                villeDao.insertVille(ville);
-                seenCodes.add(codeVille);
+            inserted += inserts.size();
+            updated += updates.size();
+            written += inserts.size() + updates.size();
+            progress.lotValide(inserts.size() + updates.size());
+            inserts.clear();
+            updates.clear();
+            touched.clear();
+            ecarts.clear();
+            LOGGER.info("Import CSV : {} lignes enregistrées ({} lignes/s)", written, rowsPerSecond(written, start));
+        }
 
+        /**
+         * Adds changes to the population totals in the database, rather than writing totals
+         * computed from the file, so a city written meanwhile through {@link VilleService} is
+         * still counted.
+         */
+        private void addNbHabitants(Map<String, Integer> ecartsParDepartement) {
+            ecartsParDepartement.forEach((code, ecart) -> {
+                if (ecart != 0) {
+                    departementRepository.addNbHabitants(code, ecart);
+                }
+            });
+        }
+
+        private Ville newVille(LigneRecensement ligne) {
+            Ville ville = new Ville(ligne.codeVille(), ligne.nom(), ligne.nbHabitants(), departements.get(ligne.codeDepartement()));
+            ville.setCodeArrondissement(ligne.codeArrondissement());
+            ville.setCodeCanton(ligne.codeCanton());
+            return ville;
+        }
+
+        private void writeSnapshot(LigneRecensement ligne) {
+            if (snapshot == null) {
+                return;
+            }
+            try {
+                snapshot.write(ligne);
+            } catch (IOException e) {
+                LOGGER.warn("Snapshot du recensement abandonné : {}", e.getMessage());
+                closeSnapshot(snapshot);
+                snapshot = null;
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Erreur lors de la lecture du CSV", e);
         }
+
+        private static boolean hasChanged(VilleRecensee previous, LigneRecensement ligne) {
+            return previous.nbHabitants() != ligne.nbHabitants()
+                    || !Objects.equals(previous.nom(), ligne.nom())
+                    || !Objects.equals(previous.codeDepartement(), ligne.codeDepartement())
+                    || !Objects.equals(previous.codeArrondissement(), ligne.codeArrondissement())
+                    || !Objects.equals(previous.codeCanton(), ligne.codeCanton());
+        }
+    }
+
+    /**
+     * Computes the throughput of the import since it started.
+     *
+     * @param rows  the number of rows written so far
+     * @param start the start of the import, from {@link System#nanoTime()}
+     * @return the number of rows written per second
+     */
+    private static long rowsPerSecond(long rows, long start) {
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        return rows * 1_000_000_000L / elapsed;
     }
 }
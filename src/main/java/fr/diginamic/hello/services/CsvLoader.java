@@ -1,19 +1,41 @@
 package fr.diginamic.hello.services;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 
+/**
+ * Runs the census import at startup on a background thread, so the application
+ * accepts requests while the dataset is being loaded.
+ */
 @Component
 public class CsvLoader implements CommandLineRunner {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(CsvLoader.class);
+
     private final CsvImportService csvImportService;
+    private final ImportStatus importStatus;
+    private final TaskExecutor executor = new SimpleAsyncTaskExecutor("csv-import-");
 
-    public CsvLoader(CsvImportService csvImportService) {
+    public CsvLoader(CsvImportService csvImportService, ImportStatus importStatus) {
         this.csvImportService = csvImportService;
+        this.importStatus = importStatus;
     }
 
     @Override
     public void run(String... args) throws Exception {
-        csvImportService.importData("src/main/resources/data/recensement.csv");
+        importStatus.start();
+        executor.execute(() -> {
+            try {
+                csvImportService.importData("src/main/resources/data/recensement.csv");
+                importStatus.complete();
+            } catch (RuntimeException e) {
+                LOGGER.error("Échec de l'import du recensement", e);
+                importStatus.fail(e);
+            }
+        });
     }
 }
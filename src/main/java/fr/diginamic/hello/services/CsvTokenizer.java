@@ -0,0 +1,162 @@
+package fr.diginamic.hello.services;
+
+import java.util.Arrays;
+
+/**
+ * Reusable tokenizer for delimited lines.
+ * <p>
+ * The tokenizer only records the offsets of the fields of a line within its character
+ * buffer: integers are parsed in place and a String is created only for the fields the
+ * caller asks for. Fields are split like {@link String#split(String)} does, trailing
+ * empty fields being dropped. An instance is not thread-safe and is meant to be reused
+ * for every line read by a thread.
+ */
+public final class CsvTokenizer {
+
+    // Returned by parseInt when a field does not hold a valid integer
+    public static final int INVALID_INT = Integer.MIN_VALUE;
+
+    private final char separator;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+    private CharSequence chars;
+
+    /**
+     * @param separator the character separating the fields
+     */
+    public CsvTokenizer(char separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Splits a line into fields.
+     *
+     * @param chars the buffer holding the line
+     * @param start the offset of the first character of the line
+     * @param end   the offset following the last character of the line, line terminator excluded
+     * @return the number of fields of the line
+     */
+    public int tokenize(CharSequence chars, int start, int end) {
+        this.chars = chars;
+        this.count = 0;
+
+        int fieldStart = start;
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) == separator) {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        addField(fieldStart, end);
+
+        while (count > 0 && starts[count - 1] == ends[count - 1]) {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of fields of the last tokenized line
+     */
+    public int fieldCount() {
+        return count;
+    }
+
+    /**
+     * Returns the length of a field once its leading and trailing spaces are removed,
+     * as {@link String#trim()} would.
+     *
+     * @param field the index of the field
+     * @return the trimmed length of the field
+     */
+    public int trimmedLength(int field) {
+        return trimmedEnd(field) - trimmedStart(field);
+    }
+
+    /**
+     * Creates the String of a field, without its leading and trailing spaces.
+     *
+     * @param field the index of the field
+     * @return the trimmed value of the field
+     */
+    public String string(int field) {
+        return chars.subSequence(trimmedStart(field), trimmedEnd(field)).toString();
+    }
+
+    /**
+     * Parses a field as an integer, ignoring whitespace and thousands separators
+     * (spaces, including non-breaking ones) wherever they appear.
+     *
+     * @param field the index of the field
+     * @return the value of the field, or {@link #INVALID_INT} if it is not a valid integer
+     */
+    public int parseInt(int field) {
+        int end = ends[field];
+        long value = 0;
+        boolean negative = false;
+        boolean signAllowed = true;
+        boolean digits = false;
+
+        for (int i = starts[field]; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+                    return INVALID_INT;
+                }
+                digits = true;
+                signAllowed = false;
+            } else if (isIgnored(c)) {
+                continue;
+            } else if ((c == '-' || c == '+') && signAllowed) {
+                negative = c == '-';
+                signAllowed = false;
+            } else {
+                return INVALID_INT;
+            }
+        }
+
+        if (!digits) {
+            return INVALID_INT;
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    private void addField(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private int trimmedStart(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        while (start < end && chars.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimmedEnd(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        while (end > start && chars.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * @param c a character of a numeric field
+     * @return whether the character is whitespace or a thousands separator
+     */
+    private static boolean isIgnored(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r'
+                || c == '\u00A0' || c == '\u202F';
+    }
+}
@@ -0,0 +1,63 @@
+package fr.diginamic.hello.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position reached by a keyset pagination over the cities, exchanged with clients as an
+ * opaque token.
+ *
+ * @param tri         the order of the pagination
+ * @param nbHabitants the population of the last city returned, for {@link Tri#POPULATION}
+ * @param id          the ID of the last city returned
+ */
+public record CurseurVilles(Tri tri, int nbHabitants, int id) {
+
+    /**
+     * Orders of the keyset pagination.
+     */
+    public enum Tri {
+        // Ascending ids
+        ID,
+        // Descending populations, then descending ids
+        POPULATION
+    }
+
+    /**
+     * @return the token sent to the client to fetch the next page
+     */
+    public String encode() {
+        String valeur = tri == Tri.ID ? "i:" + id : "p:" + nbHabitants + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valeur.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a token sent back by a client.
+     *
+     * @param token the token
+     * @return the position it holds
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    public static CurseurVilles decode(String token) {
+        try {
+            String[] valeurs = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (valeurs.length == 2 && valeurs[0].equals("i")) {
+                return new CurseurVilles(Tri.ID, 0, valeur(valeurs[1]));
+            }
+            if (valeurs.length == 3 && valeurs[0].equals("p")) {
+                return new CurseurVilles(Tri.POPULATION, valeur(valeurs[1]), valeur(valeurs[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // Falls through to the error below, NumberFormatException and negative values included
+        }
+        throw new IllegalArgumentException("Curseur invalide : " + token);
+    }
+
+    private static int valeur(String texte) {
+        int valeur = Integer.parseInt(texte);
+        if (valeur < 0) {
+            throw new IllegalArgumentException();
+        }
+        return valeur;
+    }
+}
@@ -0,0 +1,47 @@
+package fr.diginamic.hello.services;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version of the census dataset, increased after each committed change to the cities
+ * or departements and after each import.
+ * <p>
+ * The version is increased by the last listener of the changes: the caches and indexes
+ * registered with {@link #ORDRE_DONNEES} are up to date before a new version is seen, so
+ * a response tagged with a version never holds older data. It starts from the startup
+ * time, so the versions handed out before a restart are not reused.
+ */
+@Component
+public class DatasetVersion {
+
+    /**
+     * Order of the listeners updating in-memory data from the changes.
+     */
+    public static final int ORDRE_DONNEES = Ordered.LOWEST_PRECEDENCE - 1;
+
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * @return the current version of the dataset
+     */
+    public long get() {
+        return version.get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onRecensementModifie(RecensementModifie event) {
+        version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onVilleModifiee(VilleModifiee event) {
+        version.incrementAndGet();
+    }
+}
@@ -1,10 +1,17 @@
 package fr.diginamic.hello.services;
 
+import fr.diginamic.hello.dtos.DepartementDto;
+import fr.diginamic.hello.dtos.DepartementMapper;
+import fr.diginamic.hello.dtos.VilleDto;
 import fr.diginamic.hello.entity.Departement;
 import fr.diginamic.hello.daos.DepartementDao;
 import fr.diginamic.hello.repository.DepartementRepository;
+import fr.diginamic.hello.repository.VilleRepository;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import java.util.List;
 
@@ -14,76 +21,107 @@ public class DepartementService {
     // The DepartementDao is injected here to interact with the database
     private final DepartementDao departementDao;
     private final DepartementRepository departementRepository;
+    // Reads the cities of a departement page by page
+    private final VilleRepository villeRepository;
+    // Changes to a departement affect the rollups of all its cities
+    private final ApplicationEventPublisher eventPublisher;
 
 
     /**
      * Constructor to inject the DepartementDao dependency.
      *
-     * @param departementDao the DepartementDao instance to be used by this service
+     * @param departementDao  the DepartementDao instance to be used by this service
+     * @param villeRepository reads the cities of the departements
+     * @param eventPublisher  publishes the changes made to the departements
      */
-    public DepartementService(DepartementDao departementDao, DepartementRepository departementRepository) {
+    public DepartementService(DepartementDao departementDao, DepartementRepository departementRepository,
+                              VilleRepository villeRepository, ApplicationEventPublisher eventPublisher) {
         this.departementDao = departementDao;
         this.departementRepository = departementRepository;
+        this.villeRepository = villeRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
-     * Retrieves all Departement entities from the database.
+     * Retrieves the summaries of all the departements, without their cities.
      *
-     * @return a list of all Departement entities
+     * @return the summaries of all the departements, sorted by code
      */
     @Transactional
-    public List<Departement> extractDepartements() {
-        return departementRepository.findAll();
+    public List<DepartementDto> extractDepartements() {
+        return departementRepository.findAllDto();
     }
 
     /**
-     * Retrieves a Departement entity by its ID.
+     * Retrieves the summary of a departement by its ID.
      *
      * @param id the ID of the Departement to retrieve
-     * @return the Departement entity with the specified ID
+     * @return the summary of the departement with the specified ID
      * @throws IllegalArgumentException if the ID is less than or equal to 0
      * @throws EntityNotFoundException  if no Departement with the given ID exists
      */
     @Transactional
-    public Departement extractDepartementById(int id) {
+    public DepartementDto extractDepartementById(int id) {
         if (id <= 0) {
             throw new IllegalArgumentException("L'id du département doit être supérieur à 0");
         }
 
-        return departementRepository.findById(id)
+        return departementRepository.findDtoById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Département avec l'id " + id + " non trouvé"));
     }
 
     /**
-     * Retrieves a Departement entity by its code.
+     * Retrieves the summary of a departement by its code.
      *
      * @param code the code of the Departement to retrieve
-     * @return the Departement entity with the specified code
+     * @return the summary of the departement with the specified code
      * @throws IllegalArgumentException if the code is null or empty
      * @throws EntityNotFoundException  if no Departement with the given code exists
      */
     @Transactional
-    public Departement extractDepartementByCode(String code) {
+    public DepartementDto extractDepartementByCode(String code) {
         if (code == null || code.trim().isEmpty()) {
             throw new IllegalArgumentException("Le code du département ne peut pas être vide");
         }
 
-        Departement departement = departementRepository.findByCode(code);
-        if (departement == null) {
+        return departementRepository.findDtoByCode(code)
+                .orElseThrow(() -> new EntityNotFoundException("Département avec le code " + code + " non trouvé"));
+    }
+
+    /**
+     * Retrieves a page of the cities of a departement, most populated first.
+     *
+     * @param code the code of the departement
+     * @param page the number of the page, from 0
+     * @param size the number of cities of the page
+     * @return the page of cities
+     * @throws IllegalArgumentException if the code is empty or the page is invalid
+     * @throws EntityNotFoundException  if no Departement with the given code exists
+     */
+    @Transactional
+    public Page<VilleDto> extractVillesOfDepartement(String code, int page, int size) {
+        if (code == null || code.trim().isEmpty()) {
+            throw new IllegalArgumentException("Le code du département ne peut pas être vide");
+        }
+        if (page < 0 || size <= 0) {
+            throw new IllegalArgumentException("La page doit être positive et la taille supérieure à 0");
+        }
+        if (!departementRepository.existsByCode(code)) {
             throw new EntityNotFoundException("Département avec le code " + code + " non trouvé");
         }
-        return departement;
+
+        return villeRepository.findDtoByDepartement_CodeOrderByNbHabitantsDesc(code, PageRequest.of(page, size));
     }
 
     /**
      * Inserts a new Departement entity into the database.
      *
      * @param departement the Departement object to insert
-     * @return the updated list of all Departement entities
+     * @return the summary of the created departement
      * @throws IllegalArgumentException if the departement is null or its code is null or empty
      */
     @Transactional
-    public List<Departement> insertDepartement(Departement departement) {
+    public DepartementDto insertDepartement(Departement departement) {
         if (departement == null) {
             throw new IllegalArgumentException("Le département ne peut pas être null");
         }
@@ -91,8 +129,11 @@ public class DepartementService {
             throw new IllegalArgumentException("Le code du département ne peut pas être vide");
         }
 
+        // The total of a departement is the sum of its cities, kept up to date as they change
+        departement.setNombreHabitants(0);
         departementRepository.save(departement);
-        return departementRepository.findAll();
+        eventPublisher.publishEvent(new RecensementModifie());
+        return DepartementMapper.toDepartementDto(departement);
     }
 
     /**
@@ -100,17 +141,18 @@ public class DepartementService {
      *
      * @param idDepartement      the ID of the Departement to update
      * @param departementUpdated the updated Departement object
-     * @return the updated list of all Departement entities
+     * @return the summary of the updated departement
      * @throws IllegalArgumentException if the ID is less than or equal to 0 or if the updated departement's code is null or empty
      */
     @Transactional
-    public List<Departement> updateDepartement(int idDepartement, Departement departementUpdated) {
-        Departement existing = extractDepartementById(idDepartement);
-
+    public DepartementDto updateDepartement(int idDepartement, Departement departementUpdated) {
         if (idDepartement <= 0) {
             throw new IllegalArgumentException("L'id du département doit être supérieur à 0");
         }
 
+        Departement existing = departementRepository.findById(idDepartement)
+                .orElseThrow(() -> new EntityNotFoundException("Département avec l'id " + idDepartement + " non trouvé"));
+
         if (departementUpdated.getCode() == null || departementUpdated.getCode().trim().isEmpty()) {
             throw new IllegalArgumentException("Le code du département ne peut pas être vide");
         }
@@ -118,14 +160,14 @@ public class DepartementService {
         existing.setNom(departementUpdated.getNom());
         existing.setCode(departementUpdated.getCode());
         departementRepository.save(existing);
-        return departementRepository.findAll();
+        eventPublisher.publishEvent(new RecensementModifie());
+        return DepartementMapper.toDepartementDto(existing);
     }
 
     /**
      * Deletes a Departement entity by its ID.
      *
      * @param idDepartement the ID of the Departement to delete
-     * @return the updated list of all Departement entities
      * @throws IllegalArgumentException if the ID is less than or equal to 0
      */
     @Transactional
@@ -135,5 +177,6 @@ public class DepartementService {
         }
 
         departementRepository.deleteById(idDepartement);
+        eventPublisher.publishEvent(new RecensementModifie());
     }
 }
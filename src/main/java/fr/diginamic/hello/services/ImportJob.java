@@ -0,0 +1,68 @@
+package fr.diginamic.hello.services;
+
+import java.time.LocalDateTime;
+
+/**
+ * An import of an uploaded census file, polled through its id.
+ */
+public class ImportJob {
+
+    private final String id;
+    private final ImportProgress progress;
+    private final LocalDateTime debut = LocalDateTime.now();
+    private volatile ImportStatus.Etat etat = ImportStatus.Etat.EN_COURS;
+    private volatile LocalDateTime fin;
+    private volatile String erreur;
+
+    /**
+     * @param id       the id of the job
+     * @param progress the progress of the import run by the job
+     */
+    public ImportJob(String id, ImportProgress progress) {
+        this.id = id;
+        this.progress = progress;
+    }
+
+    /**
+     * Marks the job as successfully finished.
+     */
+    public void complete() {
+        this.fin = LocalDateTime.now();
+        this.etat = ImportStatus.Etat.TERMINE;
+    }
+
+    /**
+     * Marks the job as failed.
+     *
+     * @param erreur the message of the failure
+     */
+    public void fail(String erreur) {
+        this.erreur = erreur;
+        this.fin = LocalDateTime.now();
+        this.etat = ImportStatus.Etat.ECHEC;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ImportProgress getProgress() {
+        return progress;
+    }
+
+    public LocalDateTime getDebut() {
+        return debut;
+    }
+
+    public ImportStatus.Etat getEtat() {
+        return etat;
+    }
+
+    public LocalDateTime getFin() {
+        return fin;
+    }
+
+    public String getErreur() {
+        return erreur;
+    }
+}
@@ -0,0 +1,128 @@
+package fr.diginamic.hello.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class ImportJobService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImportJobService.class);
+
+    private final CsvImportService csvImportService;
+    // Cleared of a failed startup import by a successful upload
+    private final ImportStatus importStatus;
+    // Time a finished job stays visible
+    private final Duration retention;
+    // Number of finished jobs kept, the oldest being evicted first
+    private final int maxTermines;
+    // Jobs of the uploaded files, by id
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor to inject the import dependencies.
+     *
+     * @param csvImportService the service importing the uploaded content
+     * @param importStatus     the state of the startup import
+     * @param retention        the time a finished job stays visible
+     * @param maxTermines      the number of finished jobs kept
+     */
+    public ImportJobService(CsvImportService csvImportService, ImportStatus importStatus,
+                            @Value("${recensement.import.jobs.retention:1h}") Duration retention,
+                            @Value("${recensement.import.jobs.max-termines:100}") int maxTermines) {
+        this.csvImportService = csvImportService;
+        this.importStatus = importStatus;
+        this.retention = retention;
+        this.maxTermines = maxTermines;
+    }
+
+    /**
+     * Starts the job of an upload, before its content is read, so the job can be returned
+     * to the client at once. The content is then imported by {@link #run(ImportJob, InputStream)}.
+     *
+     * @return the running job
+     * @throws IllegalStateException if another import is running
+     */
+    public ImportJob start() {
+        evict();
+        ImportProgress progress = csvImportService.startImport();
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), progress);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    /**
+     * Imports uploaded CSV content as it is received, on the calling thread, then marks
+     * the job as finished. The content is never held whole, in memory or on disk.
+     *
+     * @param job the job returned by {@link #start()}
+     * @param in  the uploaded content, left open
+     */
+    public void run(ImportJob job, InputStream in) {
+        try {
+            csvImportService.importData(in, job.getProgress());
+            importStatus.recover();
+            job.complete();
+        } catch (RuntimeException e) {
+            LOGGER.error("Échec de l'import {}", job.getId(), e);
+            job.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Fails a job whose content could not be read, releasing the import lock taken by {@link #start()}.
+     *
+     * @param job    the job returned by {@link #start()}
+     * @param erreur the cause of the failure
+     */
+    public void abort(ImportJob job, Exception erreur) {
+        LOGGER.error("Échec de l'import {}", job.getId(), erreur);
+        job.fail(erreur.getMessage());
+        csvImportService.cancelImport();
+    }
+
+    /**
+     * @param id the id of the job
+     * @return the job, or null if no job has this id
+     */
+    public ImportJob getJob(String id) {
+        evict();
+        return jobs.get(id);
+    }
+
+    /**
+     * @return the running jobs and the finished jobs still kept
+     */
+    public Collection<ImportJob> getJobs() {
+        evict();
+        return jobs.values();
+    }
+
+    /**
+     * Drops the finished jobs older than the retention, then the oldest finished jobs
+     * beyond the maximum number kept.
+     */
+    private void evict() {
+        LocalDateTime limite = LocalDateTime.now().minus(retention);
+        jobs.values().removeIf(job -> job.getFin() != null && job.getFin().isBefore(limite));
+
+        List<ImportJob> termines = jobs.values().stream()
+                .filter(job -> job.getFin() != null)
+                .sorted(Comparator.comparing(ImportJob::getFin))
+                .toList();
+        for (int i = 0; i < termines.size() - maxTermines; i++) {
+            jobs.remove(termines.get(i).getId());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package fr.diginamic.hello.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Holds the progress of the current, or last, census import and publishes it
+ * through Micrometer under {@code recensement.import.*}. The gauges are registered when
+ * Spring Boot binds the monitor to the meter registry.
+ */
+@Component
+public class ImportMonitor implements MeterBinder {
+
+    private final int capaciteEchantillons;
+    private volatile ImportProgress current;
+
+    /**
+     * @param capaciteEchantillons the number of rejected lines sampled by each run
+     */
+    public ImportMonitor(@Value("${recensement.import.rejected-samples:100}") int capaciteEchantillons) {
+        this.capaciteEchantillons = capaciteEchantillons;
+    }
+
+    /**
+     * Registers the import gauges.
+     *
+     * @param registry the registry the import gauges are registered in
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        gauge(registry, "recensement.import.lignes.lues", "Lignes lues dans le fichier", ImportProgress::getLignesLues);
+        gauge(registry, "recensement.import.lignes.enregistrees", "Lignes écrites en base", ImportProgress::getLignesEnregistrees);
+        gauge(registry, "recensement.import.lots.valides", "Lots validés", ImportProgress::getLotsValides);
+        gauge(registry, "recensement.import.debit", "Lignes écrites par seconde", ImportProgress::getDebitCourant);
+        for (RejetLigne raison : RejetLigne.values()) {
+            Gauge.builder("recensement.import.lignes.rejetees", this, monitor -> monitor.read(progress -> progress.getRejets(raison)))
+                    .description("Lignes rejetées")
+                    .tag("raison", raison.name())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Starts tracking a new import run.
+     *
+     * @return the progress of the new run
+     */
+    public ImportProgress startRun() {
+        ImportProgress progress = new ImportProgress(capaciteEchantillons);
+        this.current = progress;
+        return progress;
+    }
+
+    /**
+     * @return the progress of the current or last run, or null if no import has run
+     */
+    public ImportProgress getCurrent() {
+        return current;
+    }
+
+    private void gauge(MeterRegistry registry, String name, String description, ToDoubleFunction<ImportProgress> value) {
+        Gauge.builder(name, this, monitor -> monitor.read(value))
+                .description(description)
+                .register(registry);
+    }
+
+    private double read(ToDoubleFunction<ImportProgress> value) {
+        ImportProgress progress = current;
+        return progress == null ? 0 : value.applyAsDouble(progress);
+    }
+}
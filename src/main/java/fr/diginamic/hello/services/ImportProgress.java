@@ -0,0 +1,129 @@
+package fr.diginamic.hello.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of a census import run.
+ * <p>
+ * Counters may be updated from several parsing threads at once. Rejected lines are
+ * counted by reason and the most recent ones are kept in a bounded buffer.
+ */
+public class ImportProgress {
+
+    /**
+     * A rejected line kept as a sample.
+     *
+     * @param raison the reason of the rejection
+     * @param ligne  the content of the line
+     */
+    public record RejetEchantillon(RejetLigne raison, String ligne) {
+    }
+
+    private final LongAdder lignesLues = new LongAdder();
+    private final Map<RejetLigne, LongAdder> rejets = new EnumMap<>(RejetLigne.class);
+    private final AtomicLong lignesEnregistrees = new AtomicLong();
+    private final AtomicLong lotsValides = new AtomicLong();
+    private final long debut = System.nanoTime();
+    private final Deque<RejetEchantillon> echantillons = new ArrayDeque<>();
+    private final int capaciteEchantillons;
+    private volatile long dernierLot = debut;
+    private volatile long debitCourant;
+
+    /**
+     * @param capaciteEchantillons the number of rejected lines kept as samples
+     */
+    public ImportProgress(int capaciteEchantillons) {
+        this.capaciteEchantillons = capaciteEchantillons;
+        for (RejetLigne raison : RejetLigne.values()) {
+            rejets.put(raison, new LongAdder());
+        }
+    }
+
+    /**
+     * Counts lines read from the file.
+     *
+     * @param count the number of lines read
+     */
+    public void addLignesLues(long count) {
+        lignesLues.add(count);
+    }
+
+    /**
+     * Counts a rejected line and keeps it as a sample, evicting the oldest sample if the buffer is full.
+     *
+     * @param raison the reason of the rejection
+     * @param ligne  the content of the line
+     */
+    public void rejet(RejetLigne raison, CharSequence ligne) {
+        rejets.get(raison).increment();
+        if (capaciteEchantillons == 0) {
+            return;
+        }
+        RejetEchantillon echantillon = new RejetEchantillon(raison, ligne.toString());
+        synchronized (echantillons) {
+            if (echantillons.size() == capaciteEchantillons) {
+                echantillons.removeFirst();
+            }
+            echantillons.addLast(echantillon);
+        }
+    }
+
+    /**
+     * Counts a committed batch and updates the current throughput.
+     *
+     * @param lignes the number of rows written by the batch
+     */
+    public void lotValide(int lignes) {
+        long now = System.nanoTime();
+        lignesEnregistrees.addAndGet(lignes);
+        lotsValides.incrementAndGet();
+        debitCourant = lignes * 1_000_000_000L / Math.max(1, now - dernierLot);
+        dernierLot = now;
+    }
+
+    public long getLignesLues() {
+        return lignesLues.sum();
+    }
+
+    public long getRejets(RejetLigne raison) {
+        return rejets.get(raison).sum();
+    }
+
+    public long getLignesEnregistrees() {
+        return lignesEnregistrees.get();
+    }
+
+    public long getLotsValides() {
+        return lotsValides.get();
+    }
+
+    /**
+     * @return the number of rows written per second by the last committed batch
+     */
+    public long getDebitCourant() {
+        return debitCourant;
+    }
+
+    /**
+     * @return the number of rows written per second since the start of the run
+     */
+    public long getDebitMoyen() {
+        return lignesEnregistrees.get() * 1_000_000_000L / Math.max(1, System.nanoTime() - debut);
+    }
+
+    /**
+     * @return a copy of the sampled rejected lines, oldest first
+     */
+    public List<RejetEchantillon> getEchantillons() {
+        synchronized (echantillons) {
+            return new ArrayList<>(echantillons);
+        }
+    }
+}
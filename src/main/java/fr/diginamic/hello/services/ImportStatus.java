@@ -0,0 +1,79 @@
+package fr.diginamic.hello.services;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * State of the census import run at startup, shared between the background import
+ * and the components gating reads on its completion.
+ */
+@Component
+public class ImportStatus {
+
+    public enum Etat {
+        EN_ATTENTE,
+        EN_COURS,
+        TERMINE,
+        ECHEC
+    }
+
+    private volatile Etat etat = Etat.EN_ATTENTE;
+    private volatile Throwable erreur;
+
+    /**
+     * Marks the import as started.
+     */
+    public void start() {
+        this.erreur = null;
+        this.etat = Etat.EN_COURS;
+    }
+
+    /**
+     * Marks the import as successfully finished.
+     */
+    public void complete() {
+        this.etat = Etat.TERMINE;
+    }
+
+    /**
+     * Marks the import as failed.
+     *
+     * @param erreur the cause of the failure
+     */
+    public void fail(Throwable erreur) {
+        this.erreur = erreur;
+        this.etat = Etat.ECHEC;
+    }
+
+    /**
+     * Marks the dataset as complete after a failed startup import, once an uploaded file
+     * has been imported successfully.
+     */
+    public synchronized void recover() {
+        if (etat == Etat.ECHEC) {
+            this.erreur = null;
+            this.etat = Etat.TERMINE;
+        }
+    }
+
+    /**
+     * @return whether the startup import has failed and no upload has replaced it since
+     */
+    public boolean isFailed() {
+        return etat == Etat.ECHEC;
+    }
+
+    public Etat getEtat() {
+        return etat;
+    }
+
+    public Throwable getErreur() {
+        return erreur;
+    }
+
+    /**
+     * @return whether the whole dataset is available
+     */
+    public boolean isReady() {
+        return etat == Etat.TERMINE;
+    }
+}
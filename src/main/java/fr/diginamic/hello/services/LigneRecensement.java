@@ -0,0 +1,19 @@
+package fr.diginamic.hello.services;
+
+/**
+ * A validated line of the census CSV file, ready to be persisted.
+ *
+ * @param codeRegion         the code of the region, empty if the line has none
+ * @param nomRegion          the name of the region
+ * @param codeDepartement    the code of the department
+ * @param codeArrondissement the code of the arrondissement within the department
+ * @param codeCanton         the code of the canton within the department
+ * @param codeVille          the code of the city
+ * @param nom                the name of the city
+ * @param nbHabitants        the municipal population of the city
+ * @param nbHabitantsTotal   the total population of the city
+ */
+public record LigneRecensement(String codeRegion, String nomRegion, String codeDepartement,
+                               String codeArrondissement, String codeCanton, String codeVille, String nom,
+                               int nbHabitants, int nbHabitantsTotal) {
+}
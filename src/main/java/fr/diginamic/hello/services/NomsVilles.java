@@ -0,0 +1,32 @@
+package fr.diginamic.hello.services;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalization of the city names shared by the name indexes, so a name is matched the
+ * same way by prefix and approximate searches.
+ */
+final class NomsVilles {
+
+    private static final Pattern DIACRITIQUES = Pattern.compile("\\p{M}+");
+
+    private NomsVilles() {
+    }
+
+    /**
+     * Removes the accents of a name and puts it in lower case, the ligatures being
+     * written as their two letters.
+     *
+     * @param nom the name
+     * @return the name without accents, in lower case
+     */
+    static String sansAccents(String nom) {
+        String decompose = Normalizer.normalize(nom, Normalizer.Form.NFD);
+        return DIACRITIQUES.matcher(decompose).replaceAll("").toLowerCase(Locale.ROOT)
+                .replace("œ", "oe")
+                .replace("æ", "ae")
+                .replace("ß", "ss");
+    }
+}
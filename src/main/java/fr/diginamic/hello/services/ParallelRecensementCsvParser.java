@@ -0,0 +1,143 @@
+package fr.diginamic.hello.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Parses the census CSV file on a fork-join pool.
+ * <p>
+ * The file is memory-mapped and split into line-aligned byte ranges, each range being
+ * decoded and parsed by its own task. Parsed ranges are handed to the consumer in file
+ * order through a bounded queue, so the output is identical to
+ * {@link RecensementCsvParser#parse} and no more than a few ranges are held in memory
+ * at once.
+ */
+public class ParallelRecensementCsvParser {
+
+    // Bounds of the byte ranges parsed by a single task
+    private static final long MIN_RANGE_SIZE = 256 * 1024;
+    private static final long MAX_RANGE_SIZE = 64 * 1024 * 1024;
+    // Size of the buffer used to look for line boundaries
+    private static final int SCAN_BUFFER_SIZE = 4096;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param pool the pool parsing the ranges of the file
+     */
+    public ParallelRecensementCsvParser(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Parses the census file, skipping its header line.
+     *
+     * @param file     the path of the file
+     * @param progress counts the lines read and rejected
+     * @param consumer receives the parsed lines of each range, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public void parse(Path file, ImportProgress progress, Consumer<List<LigneRecensement>> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = nextLineStart(channel, 0, size);
+            int parallelism = pool.getParallelism();
+            long rangeSize = Math.clamp(size / (parallelism * 4L), MIN_RANGE_SIZE, MAX_RANGE_SIZE);
+            int capacity = parallelism * 2;
+            Deque<ForkJoinTask<List<LigneRecensement>>> queue = new ArrayDeque<>(capacity);
+
+            try {
+                while (start < size || !queue.isEmpty()) {
+                    while (start < size && queue.size() < capacity) {
+                        long end = nextLineStart(channel, Math.min(size, start + rangeSize), size);
+                        ByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                        queue.addLast(pool.submit(() -> parseRange(range, progress)));
+                        start = end;
+                    }
+                    consumer.accept(queue.removeFirst().join());
+                }
+            } finally {
+                queue.forEach(task -> task.cancel(true));
+            }
+        }
+    }
+
+    /**
+     * Finds the start of the first line beginning at or after a position.
+     *
+     * @param channel  the channel of the file
+     * @param position the position to start from
+     * @param size     the size of the file
+     * @return the offset following the next line feed, or the size of the file if there is none
+     * @throws IOException if the file cannot be read
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Decodes and parses a line-aligned range of the file.
+     * Lines are split like {@link java.io.BufferedReader#readLine()} does.
+     *
+     * @param range    the bytes of the range
+     * @param progress counts the lines read and rejected
+     * @return the parsed lines of the range, in file order
+     */
+    private static List<LigneRecensement> parseRange(ByteBuffer range, ImportProgress progress) {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(range);
+        CsvTokenizer tokenizer = new CsvTokenizer(';');
+        List<LigneRecensement> lignes = new ArrayList<>();
+
+        int length = chars.length();
+        int lineStart = 0;
+        long lines = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && chars.get(lineEnd) != '\n' && chars.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+
+            lines++;
+            LigneRecensement ligne = RecensementCsvParser.parseLine(tokenizer, chars, lineStart, lineEnd, progress);
+            if (ligne != null) {
+                lignes.add(ligne);
+            }
+
+            if (lineEnd < length && chars.get(lineEnd) == '\r') {
+                lineEnd++;
+            }
+            if (lineEnd < length && chars.get(lineEnd) == '\n') {
+                lineEnd++;
+            }
+            lineStart = lineEnd;
+        }
+        progress.addLignesLues(lines);
+        return lignes;
+    }
+}
@@ -0,0 +1,384 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.dtos.VilleMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the cities sorted by population, for the whole country and for
+ * each departement.
+ * <p>
+ * Each partition holds the populations and the ids of its cities in two parallel
+ * {@code int[]} arrays sorted by population, and the cities themselves in a third one, so
+ * a range or threshold query is two binary searches followed by a slice read from the end.
+ * The arrays are rebuilt when the dataset is reloaded and copied on each city write, then
+ * published together: readers always see a complete and consistent state.
+ * <p>
+ * A write removes the city by id, wherever the index holds it, before inserting its
+ * state read from the database, so an event already seen by a rebuild leaves the index
+ * as it is.
+ * <p>
+ * Each departement also keeps a leaderboard: its {@code tailleClassement} most populated
+ * cities, recomputed whenever one of its cities changes, from which the top-N reads
+ * are served as they are.
+ */
+@Component
+public class PopulationIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PopulationIndex.class);
+
+    private final VilleDao villeDao;
+    // Loads run in their own read-only transaction, after the change has been committed
+    private final TransactionTemplate transactionTemplate;
+    // Number of cities of the leaderboard of each departement
+    private final int tailleClassement;
+
+    private volatile Etat etat = new Etat(Tranche.VIDE, Map.of(), Map.of());
+    // Cities held by the partitions, by id; only read and written under the lock of the writers
+    private Map<Integer, VilleDto> villes = new HashMap<>();
+    private volatile boolean ready;
+
+    /**
+     * @param villeDao           reads the cities
+     * @param transactionManager the manager of the transactions the cities are read in
+     * @param tailleClassement   the number of cities of the leaderboard of each departement
+     */
+    public PopulationIndex(VilleDao villeDao, PlatformTransactionManager transactionManager,
+                           @Value("${recensement.classements.taille:100}") int tailleClassement) {
+        this.villeDao = villeDao;
+        this.tailleClassement = tailleClassement;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Rebuilds the index once the dataset has been reloaded.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onRecensementModifie(RecensementModifie event) {
+        load(transactionTemplate.execute(status -> villeDao.getVillesResumees()));
+        LOGGER.info("Index des populations construit : {} villes", villes.size());
+    }
+
+    /**
+     * Moves a changed city within the partitions of its former and new departements.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onVilleModifiee(VilleModifiee event) {
+        Etat courant = etat;
+        Tranche france = courant.france();
+        Map<String, Tranche> departements = new HashMap<>(courant.departements());
+        Map<String, List<VilleDto>> classements = new HashMap<>(courant.classements());
+        int id = event.id();
+
+        // Removed as the index holds it, which may already be its state after the change
+        VilleDto ancienne = villes.remove(id);
+        if (ancienne != null) {
+            france = france.remove(ancienne.getNbHabitants(), id);
+            departements.computeIfPresent(ancienne.getCodeDepartement(),
+                    (code, tranche) -> tranche.remove(ancienne.getNbHabitants(), id));
+        }
+
+        VilleResume ville = event.apres() == null ? null : transactionTemplate.execute(status -> villeDao.getVilleResumee(id));
+        if (ville != null) {
+            VilleDto dto = VilleMapper.toDto(ville);
+            villes.put(id, dto);
+            france = france.insert(ville.nbHabitants(), id, dto);
+            Tranche tranche = departements.getOrDefault(ville.codeDepartement(), Tranche.VIDE).insert(ville.nbHabitants(), id, dto);
+            departements.put(ville.codeDepartement(), tranche);
+            classements.put(ville.codeDepartement(), classement(tranche));
+        }
+        // The former departement loses the city when it has moved or been deleted
+        if (ancienne != null && (ville == null || !ancienne.getCodeDepartement().equals(ville.codeDepartement()))) {
+            Tranche tranche = departements.get(ancienne.getCodeDepartement());
+            if (tranche != null) {
+                classements.put(ancienne.getCodeDepartement(), classement(tranche));
+            }
+        }
+        etat = new Etat(france, departements, classements);
+    }
+
+    /**
+     * Replaces the content of the index.
+     *
+     * @param villes all the cities
+     */
+    synchronized void load(List<VilleResume> villes) {
+        Map<Integer, VilleDto> dtos = new HashMap<>(villes.size() * 2);
+        Map<String, List<VilleResume>> parDepartement = new HashMap<>();
+        for (VilleResume ville : villes) {
+            dtos.put(ville.id(), VilleMapper.toDto(ville));
+            parDepartement.computeIfAbsent(ville.codeDepartement(), code -> new ArrayList<>()).add(ville);
+        }
+
+        Map<String, Tranche> departements = new HashMap<>();
+        Map<String, List<VilleDto>> classements = new HashMap<>();
+        parDepartement.forEach((code, villesDepartement) -> {
+            Tranche tranche = Tranche.of(villesDepartement, dtos);
+            departements.put(code, tranche);
+            classements.put(code, classement(tranche));
+        });
+        this.villes = dtos;
+        etat = new Etat(Tranche.of(villes, dtos), departements, classements);
+        ready = true;
+    }
+
+    /**
+     * @return the most populated cities of a partition, most populated first
+     */
+    private List<VilleDto> classement(Tranche tranche) {
+        return List.copyOf(Etat.slice(tranche, 0, tranche.size(), tailleClassement));
+    }
+
+    /**
+     * @return whether the index has been built since startup
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Finds the cities whose population is within a range.
+     *
+     * @param codeDepartement the code of a departement, or null for the whole country
+     * @param min             the minimum population, inclusive
+     * @param max             the maximum population, inclusive
+     * @return the matching cities, most populated first
+     */
+    public List<VilleDto> findBetween(String codeDepartement, int min, int max) {
+        Etat courant = etat;
+        Tranche tranche = courant.tranche(codeDepartement);
+        return Etat.slice(tranche, tranche.firstAtLeast(min), tranche.firstAbove(max), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the cities whose population is above a threshold.
+     *
+     * @param codeDepartement the code of a departement, or null for the whole country
+     * @param min             the threshold, exclusive
+     * @return the matching cities, most populated first
+     */
+    public List<VilleDto> findGreaterThan(String codeDepartement, int min) {
+        Etat courant = etat;
+        Tranche tranche = courant.tranche(codeDepartement);
+        return Etat.slice(tranche, tranche.firstAbove(min), tranche.size(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads the cities whose population is within a range lazily, from the state of the
+     * index when the stream is created, for results written as they are read.
+     *
+     * @param codeDepartement the code of a departement, or null for the whole country
+     * @param min             the minimum population, inclusive
+     * @param max             the maximum population, inclusive
+     * @return the matching cities, most populated first
+     */
+    public Stream<VilleDto> streamBetween(String codeDepartement, int min, int max) {
+        Etat courant = etat;
+        Tranche tranche = courant.tranche(codeDepartement);
+        return Etat.stream(tranche, tranche.firstAtLeast(min), tranche.firstAbove(max));
+    }
+
+    /**
+     * Reads the cities whose population is above a threshold lazily, from the state of the
+     * index when the stream is created, for results written as they are read.
+     *
+     * @param codeDepartement the code of a departement, or null for the whole country
+     * @param min             the threshold, exclusive
+     * @return the matching cities, most populated first
+     */
+    public Stream<VilleDto> streamGreaterThan(String codeDepartement, int min) {
+        Etat courant = etat;
+        Tranche tranche = courant.tranche(codeDepartement);
+        return Etat.stream(tranche, tranche.firstAbove(min), tranche.size());
+    }
+
+    /**
+     * Finds the most populated cities.
+     *
+     * @param codeDepartement the code of a departement, or null for the whole country
+     * @param n               the number of cities
+     * @return the n most populated cities, most populated first
+     */
+    public List<VilleDto> findTop(String codeDepartement, int n) {
+        Etat courant = etat;
+        if (codeDepartement != null && n <= tailleClassement) {
+            List<VilleDto> classement = courant.classements().getOrDefault(codeDepartement, List.of());
+            return classement.subList(0, Math.min(n, classement.size()));
+        }
+        Tranche tranche = courant.tranche(codeDepartement);
+        return Etat.slice(tranche, 0, tranche.size(), n);
+    }
+
+    /**
+     * A consistent view of the index.
+     *
+     * @param france       the partition of the whole country
+     * @param departements the partitions of the departements, by code
+     * @param classements  the leaderboards of the departements, by code
+     */
+    private record Etat(Tranche france, Map<String, Tranche> departements, Map<String, List<VilleDto>> classements) {
+
+        private Tranche tranche(String codeDepartement) {
+            return codeDepartement == null ? france : departements.getOrDefault(codeDepartement, Tranche.VIDE);
+        }
+
+        /**
+         * Streams the cities of a slice of a partition from its end, most populated first,
+         * each one read when the stream reaches it.
+         */
+        private static Stream<VilleDto> stream(Tranche tranche, int from, int to) {
+            return IntStream.iterate(to - 1, i -> i >= from, i -> i - 1)
+                    .mapToObj(i -> tranche.villes()[i]);
+        }
+
+        /**
+         * Reads the cities of a slice of a partition from its end, most populated first.
+         */
+        private static List<VilleDto> slice(Tranche tranche, int from, int to, int limit) {
+            int start = to - Math.min(limit, Math.max(0, to - from));
+            List<VilleDto> result = new ArrayList<>(to - start);
+            for (int i = to - 1; i >= start; i--) {
+                result.add(tranche.villes()[i]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The cities of a partition, sorted by population then id.
+     *
+     * @param populations the populations of the cities, ascending
+     * @param ids         the ids of the cities, in the same order
+     * @param villes      the cities, in the same order
+     */
+    private record Tranche(int[] populations, int[] ids, VilleDto[] villes) {
+
+        private static final Tranche VIDE = new Tranche(new int[0], new int[0], new VilleDto[0]);
+
+        private static Tranche of(List<VilleResume> villes, Map<Integer, VilleDto> dtos) {
+            // Sorting packed (population, id) pairs keeps the sort on primitives
+            long[] cles = new long[villes.size()];
+            for (int i = 0; i < cles.length; i++) {
+                VilleResume ville = villes.get(i);
+                cles[i] = (long) ville.nbHabitants() << 32 | ville.id();
+            }
+            Arrays.sort(cles);
+
+            int[] populations = new int[cles.length];
+            int[] ids = new int[cles.length];
+            VilleDto[] dtosTries = new VilleDto[cles.length];
+            for (int i = 0; i < cles.length; i++) {
+                populations[i] = (int) (cles[i] >>> 32);
+                ids[i] = (int) cles[i];
+                dtosTries[i] = dtos.get(ids[i]);
+            }
+            return new Tranche(populations, ids, dtosTries);
+        }
+
+        private int size() {
+            return populations.length;
+        }
+
+        /**
+         * @return the index of the first city whose population is at least {@code population}
+         */
+        private int firstAtLeast(int population) {
+            int low = 0;
+            int high = populations.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (populations[mid] < population) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the first city whose population is above {@code population}
+         */
+        private int firstAbove(int population) {
+            int low = 0;
+            int high = populations.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (populations[mid] <= population) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private Tranche insert(int population, int id, VilleDto ville) {
+            int index = firstAtLeast(population);
+            while (index < ids.length && populations[index] == population && ids[index] < id) {
+                index++;
+            }
+            if (index < ids.length && populations[index] == population && ids[index] == id) {
+                // Already held: only the city is replaced
+                VilleDto[] newVilles = villes.clone();
+                newVilles[index] = ville;
+                return new Tranche(populations, ids, newVilles);
+            }
+            int[] newPopulations = new int[populations.length + 1];
+            int[] newIds = new int[ids.length + 1];
+            VilleDto[] newVilles = new VilleDto[villes.length + 1];
+            System.arraycopy(populations, 0, newPopulations, 0, index);
+            System.arraycopy(ids, 0, newIds, 0, index);
+            System.arraycopy(villes, 0, newVilles, 0, index);
+            newPopulations[index] = population;
+            newIds[index] = id;
+            newVilles[index] = ville;
+            System.arraycopy(populations, index, newPopulations, index + 1, populations.length - index);
+            System.arraycopy(ids, index, newIds, index + 1, ids.length - index);
+            System.arraycopy(villes, index, newVilles, index + 1, villes.length - index);
+            return new Tranche(newPopulations, newIds, newVilles);
+        }
+
+        private Tranche remove(int population, int id) {
+            int index = firstAtLeast(population);
+            while (index < ids.length && populations[index] == population && ids[index] != id) {
+                index++;
+            }
+            if (index == ids.length || populations[index] != population) {
+                return this;
+            }
+            int[] newPopulations = new int[populations.length - 1];
+            int[] newIds = new int[ids.length - 1];
+            VilleDto[] newVilles = new VilleDto[villes.length - 1];
+            System.arraycopy(populations, 0, newPopulations, 0, index);
+            System.arraycopy(ids, 0, newIds, 0, index);
+            System.arraycopy(villes, 0, newVilles, 0, index);
+            System.arraycopy(populations, index + 1, newPopulations, index, populations.length - index - 1);
+            System.arraycopy(ids, index + 1, newIds, index, ids.length - index - 1);
+            System.arraycopy(villes, index + 1, newVilles, index, villes.length - index - 1);
+            return new Tranche(newPopulations, newIds, newVilles);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.EcartPopulation;
+import fr.diginamic.hello.repository.DepartementRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Checks in the background that the population total of every departement is the sum
+ * of its cities, and corrects the ones that drifted.
+ * <p>
+ * The totals are adjusted as the cities change; this job only catches what those
+ * updates cannot see, such as rows written directly in the database. A correction is
+ * applied as a delta, so a city changed between the check and the correction is still
+ * counted.
+ */
+@Component
+public class PopulationReconciliation {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PopulationReconciliation.class);
+
+    private final DepartementRepository departementRepository;
+    // The check is skipped while the import is writing the totals
+    private final ImportStatus importStatus;
+    // Reloads the indexes and the version of the dataset once totals have been corrected
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Constructor to inject the reconciliation dependencies.
+     *
+     * @param departementRepository the repository of the departements
+     * @param importStatus          the state of the census import
+     * @param eventPublisher        publishes the corrections
+     * @param transactionManager    the manager of the transaction of each check
+     */
+    public PopulationReconciliation(DepartementRepository departementRepository, ImportStatus importStatus,
+                                    ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
+        this.departementRepository = departementRepository;
+        this.importStatus = importStatus;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Compares the total of every departement with the sum of its cities in a single
+     * aggregate query, then corrects the ones that differ.
+     *
+     * @return the number of departements corrected
+     */
+    @Scheduled(initialDelayString = "${recensement.reconciliation.interval:1h}",
+            fixedDelayString = "${recensement.reconciliation.interval:1h}")
+    public int reconcile() {
+        if (!importStatus.isReady()) {
+            return 0;
+        }
+
+        Integer corriges = transactionTemplate.execute(status -> {
+            List<EcartPopulation> ecarts = departementRepository.findEcartsPopulation();
+            for (EcartPopulation ecart : ecarts) {
+                LOGGER.warn("Population du département {} corrigée : {} au lieu de {}",
+                        ecart.codeDepartement(), ecart.somme(), ecart.nbHabitants());
+                departementRepository.addNbHabitants(ecart.codeDepartement(), (int) (ecart.somme() - ecart.nbHabitants()));
+            }
+            if (!ecarts.isEmpty()) {
+                eventPublisher.publishEvent(new RecensementModifie());
+            }
+            return ecarts.size();
+        });
+        return corriges == null ? 0 : corriges;
+    }
+}
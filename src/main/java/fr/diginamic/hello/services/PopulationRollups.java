@@ -0,0 +1,230 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.PopulationDepartement;
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.PopulationDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Population totals per region and per departement, kept in memory so that a lookup
+ * never scans the cities.
+ * <p>
+ * The totals are rebuilt from the cities whenever the dataset changes as a whole, and
+ * adjusted in place when a single city changes. Both happen once the change is committed,
+ * so a rolled back write leaves the totals untouched.
+ * <p>
+ * The population counted for each city is kept, so a change replaces what the city
+ * contributed rather than applying its delta: a change already read by a rebuild that
+ * ran between its commit and its event is not counted twice.
+ */
+@Component
+public class PopulationRollups {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PopulationRollups.class);
+
+    private final VilleDao villeDao;
+    // Rebuilds run in their own read-only transaction, after the change has been committed
+    private final TransactionTemplate transactionTemplate;
+
+    // Replaced as a whole by each rebuild, counters updated in place in between
+    private volatile Map<String, Rollup> departements = Map.of();
+    private volatile Map<String, Rollup> regions = Map.of();
+    // What each city adds to the totals, by id; only read and written under the lock of the listeners
+    private Map<Integer, Contribution> contributions = new HashMap<>();
+
+    public PopulationRollups(VilleDao villeDao, PlatformTransactionManager transactionManager) {
+        this.villeDao = villeDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Rebuilds every total once the dataset has been reloaded.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onRecensementModifie(RecensementModifie event) {
+        rebuild();
+    }
+
+    /**
+     * Moves the population of a city from its former departement and region to its new ones.
+     * A city already counted as it is after the change is left alone. A departement unknown
+     * to the totals, created since the last rebuild, triggers a rebuild.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onVilleModifiee(VilleModifiee event) {
+        Contribution courante = contributions.get(event.id());
+        Contribution nouvelle = event.apres() == null ? null
+                : new Contribution(event.apres().codeDepartement(), event.apres().nbHabitants());
+        if (Objects.equals(courante, nouvelle)) {
+            return;
+        }
+
+        if (courante != null) {
+            add(courante.codeDepartement(), -1, -courante.nbHabitants());
+            contributions.remove(event.id());
+        }
+        if (nouvelle != null) {
+            if (!add(nouvelle.codeDepartement(), 1, nouvelle.nbHabitants())) {
+                rebuild();
+                return;
+            }
+            contributions.put(event.id(), nouvelle);
+        }
+    }
+
+    /**
+     * @param code the code of a region
+     * @return the totals of the region, or null if it is unknown
+     */
+    public PopulationDto getRegion(String code) {
+        Rollup rollup = regions.get(code);
+        return rollup == null ? null : rollup.toDto();
+    }
+
+    /**
+     * @return the totals of every region, sorted by code
+     */
+    public List<PopulationDto> getRegions() {
+        return toDtos(regions.values());
+    }
+
+    /**
+     * @param code the code of a departement
+     * @return the totals of the departement, or null if it is unknown
+     */
+    public PopulationDto getDepartement(String code) {
+        Rollup rollup = departements.get(code);
+        return rollup == null ? null : rollup.toDto();
+    }
+
+    /**
+     * @param codeRegion the code of a region
+     * @return the totals of the departements of the region, sorted by code
+     */
+    public List<PopulationDto> getDepartementsOfRegion(String codeRegion) {
+        List<Rollup> rollups = new ArrayList<>();
+        for (Rollup rollup : departements.values()) {
+            if (rollup.parent != null && codeRegion.equals(rollup.parent.code)) {
+                rollups.add(rollup);
+            }
+        }
+        return toDtos(rollups);
+    }
+
+    private boolean add(String codeDepartement, int nbVilles, long nbHabitants) {
+        Rollup rollup = departements.get(codeDepartement);
+        if (rollup == null) {
+            return false;
+        }
+        rollup.add(nbVilles, nbHabitants);
+        if (rollup.parent != null) {
+            rollup.parent.add(nbVilles, nbHabitants);
+        }
+        return true;
+    }
+
+    private void rebuild() {
+        Lecture lecture = transactionTemplate.execute(status ->
+                new Lecture(villeDao.getPopulationParDepartement(), villeDao.getVillesResumees()));
+
+        Map<String, Rollup> newRegions = new HashMap<>();
+        Map<String, Rollup> newDepartements = new HashMap<>();
+        for (PopulationDepartement population : lecture.departements()) {
+            Rollup region = null;
+            if (population.codeRegion() != null) {
+                region = newRegions.computeIfAbsent(population.codeRegion(),
+                        code -> new Rollup(code, population.nomRegion(), null));
+            }
+            newDepartements.put(population.codeDepartement(),
+                    new Rollup(population.codeDepartement(), population.nomDepartement(), region));
+        }
+
+        // The totals are summed from the same cities as the contributions, read in the same transaction
+        Map<Integer, Contribution> newContributions = new HashMap<>(lecture.villes().size() * 2);
+        for (VilleResume ville : lecture.villes()) {
+            Rollup departement = newDepartements.get(ville.codeDepartement());
+            if (departement != null) {
+                departement.add(1, ville.nbHabitants());
+                if (departement.parent != null) {
+                    departement.parent.add(1, ville.nbHabitants());
+                }
+                newContributions.put(ville.id(), new Contribution(ville.codeDepartement(), ville.nbHabitants()));
+            }
+        }
+
+        contributions = newContributions;
+        regions = newRegions;
+        departements = newDepartements;
+        LOGGER.info("Totaux de population recalculés : {} régions, {} départements", newRegions.size(), newDepartements.size());
+    }
+
+    private static List<PopulationDto> toDtos(Iterable<Rollup> rollups) {
+        List<PopulationDto> dtos = new ArrayList<>();
+        for (Rollup rollup : rollups) {
+            dtos.add(rollup.toDto());
+        }
+        dtos.sort(Comparator.comparing(PopulationDto::getCode));
+        return dtos;
+    }
+
+    /**
+     * The departements and the cities read by a rebuild.
+     */
+    private record Lecture(List<PopulationDepartement> departements, List<VilleResume> villes) {
+    }
+
+    /**
+     * The population a city adds to the totals of its departement and region.
+     */
+    private record Contribution(String codeDepartement, int nbHabitants) {
+    }
+
+    /**
+     * The running totals of a region or a departement.
+     */
+    private static final class Rollup {
+
+        private final String code;
+        private final String nom;
+        // Region of a departement, null for a region
+        private final Rollup parent;
+        private final AtomicInteger nbVilles = new AtomicInteger();
+        private final AtomicLong nbHabitants = new AtomicLong();
+
+        private Rollup(String code, String nom, Rollup parent) {
+            this.code = code;
+            this.nom = nom;
+            this.parent = parent;
+        }
+
+        private void add(int villes, long habitants) {
+            nbVilles.addAndGet(villes);
+            nbHabitants.addAndGet(habitants);
+        }
+
+        private PopulationDto toDto() {
+            return new PopulationDto(code, nom, nbVilles.get(), nbHabitants.get());
+        }
+    }
+}
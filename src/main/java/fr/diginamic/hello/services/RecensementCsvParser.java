@@ -0,0 +1,119 @@
+package fr.diginamic.hello.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Parses the lines of the census CSV file into {@link LigneRecensement} records.
+ * <p>
+ * Only the checks that depend on a single line are made here; rejecting duplicate
+ * city codes depends on the order of the file and is left to the import.
+ */
+public final class RecensementCsvParser {
+
+    // Indexes of the fields read from a line
+    private static final int CODE_REGION = 0;
+    private static final int NOM_REGION = 1;
+    private static final int CODE_DEPARTEMENT = 2;
+    private static final int CODE_ARRONDISSEMENT = 3;
+    private static final int CODE_CANTON = 4;
+    private static final int CODE_VILLE = 5;
+    private static final int NOM = 6;
+    private static final int NB_HABITANTS = 7;
+    private static final int NB_HABITANTS_TOTAL = 9;
+
+    private RecensementCsvParser() {
+    }
+
+    /**
+     * Parses a single line of the census file.
+     *
+     * @param line the line to parse, without its line terminator
+     * @return the parsed line, or null if the line is empty or invalid
+     */
+    public static LigneRecensement parseLine(String line) {
+        return parseLine(new CsvTokenizer(';'), line, 0, line.length(), new ImportProgress(0));
+    }
+
+    /**
+     * Parses a single line of the census file held in a larger buffer.
+     * Strings are only created for the fields kept by the import.
+     *
+     * @param tokenizer the tokenizer of the calling thread
+     * @param chars     the buffer holding the line
+     * @param start     the offset of the first character of the line
+     * @param end       the offset following the last character of the line, line terminator excluded
+     * @param progress  counts the line if it is rejected
+     * @return the parsed line, or null if the line is empty or invalid
+     */
+    public static LigneRecensement parseLine(CsvTokenizer tokenizer, CharSequence chars, int start, int end,
+                                             ImportProgress progress) {
+        RejetLigne rejet = validate(tokenizer, chars, start, end);
+        if (rejet != null) {
+            progress.rejet(rejet, chars.subSequence(start, end));
+            return null;
+        }
+
+        return new LigneRecensement(tokenizer.string(CODE_REGION), tokenizer.string(NOM_REGION),
+                tokenizer.string(CODE_DEPARTEMENT), tokenizer.string(CODE_ARRONDISSEMENT), tokenizer.string(CODE_CANTON),
+                tokenizer.string(CODE_VILLE), tokenizer.string(NOM),
+                tokenizer.parseInt(NB_HABITANTS), tokenizer.parseInt(NB_HABITANTS_TOTAL));
+    }
+
+    /**
+     * Tokenizes a line and checks its fields.
+     *
+     * @return the reason the line is rejected, or null if it is valid
+     */
+    private static RejetLigne validate(CsvTokenizer tokenizer, CharSequence chars, int start, int end) {
+        if (tokenizer.tokenize(chars, start, end) <= NB_HABITANTS_TOTAL) return RejetLigne.LIGNE_COURTE;
+
+        if (tokenizer.trimmedLength(CODE_DEPARTEMENT) == 0) return RejetLigne.CODE_MANQUANT;
+        int nomLength = tokenizer.trimmedLength(NOM);
+        if (nomLength < 2 || nomLength > 255) return RejetLigne.NOM_INVALIDE;
+        if (tokenizer.trimmedLength(CODE_VILLE) == 0) return RejetLigne.CODE_MANQUANT;
+
+        int nbHabitants = tokenizer.parseInt(NB_HABITANTS);
+        if (nbHabitants == CsvTokenizer.INVALID_INT || nbHabitants < 1) return RejetLigne.POPULATION_INVALIDE;
+        int nbHabitantsTotal = tokenizer.parseInt(NB_HABITANTS_TOTAL);
+        if (nbHabitantsTotal == CsvTokenizer.INVALID_INT || nbHabitantsTotal < 1) return RejetLigne.POPULATION_INVALIDE;
+
+        return null;
+    }
+
+    /**
+     * Parses the census file on the calling thread, skipping its header line.
+     *
+     * @param reader    the reader of the file
+     * @param blockSize the number of parsed lines handed to the consumer at once
+     * @param progress  counts the lines read and rejected
+     * @param consumer  receives the parsed lines, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public static void parse(BufferedReader reader, int blockSize, ImportProgress progress,
+                             Consumer<List<LigneRecensement>> consumer) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(';');
+        List<LigneRecensement> block = new ArrayList<>(blockSize);
+        String line;
+        reader.readLine();
+
+        while ((line = reader.readLine()) != null) {
+            progress.addLignesLues(1);
+            LigneRecensement ligne = parseLine(tokenizer, line, 0, line.length(), progress);
+            if (ligne == null) continue;
+
+            block.add(ligne);
+            if (block.size() == blockSize) {
+                consumer.accept(block);
+                block = new ArrayList<>(blockSize);
+            }
+        }
+
+        if (!block.isEmpty()) {
+            consumer.accept(block);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package fr.diginamic.hello.services;
+
+/**
+ * Published when the census dataset may have changed as a whole: at the end of an import,
+ * or when a departement is modified or deleted along with its cities.
+ */
+public record RecensementModifie() {
+}
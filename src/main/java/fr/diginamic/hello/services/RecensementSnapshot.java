@@ -0,0 +1,270 @@
+package fr.diginamic.hello.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary copy of the lines imported from a census file, read back in a single
+ * sequential pass instead of parsing the CSV again.
+ * <p>
+ * Layout: a header (magic, version, SHA-256 of the source CSV), then one record per line
+ * and a trailer. A record starts with a varint referencing the departement dictionary;
+ * a reference equal to the size of the dictionary introduces a new departement, whose
+ * code and region code and name follow. The arrondissement and canton codes, the city
+ * code and name are length-prefixed UTF-8 strings and the populations are varints. A zero byte ends the records, followed by the number of
+ * records and a CRC32 of everything before the trailer.
+ */
+public final class RecensementSnapshot {
+
+    private static final int MAGIC = 0x52435331;
+    private static final int VERSION = 2;
+    private static final int CHECKSUM_LENGTH = 32;
+    private static final int MAX_STRING_LENGTH = 1024;
+
+    private RecensementSnapshot() {
+    }
+
+    /**
+     * Reads the checksum of the source CSV recorded in a snapshot.
+     *
+     * @param path the path of the snapshot
+     * @return the checksum, in hexadecimal, or null if the file is not a readable snapshot
+     */
+    public static String readChecksum(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return readHeader(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the lines stored in a snapshot.
+     * <p>
+     * The whole snapshot is checked first, its records, their number and CRC32, so a
+     * corrupted snapshot is rejected before the first block is handed to the consumer.
+     *
+     * @param path      the path of the snapshot
+     * @param blockSize the number of lines handed to the consumer at once
+     * @param consumer  receives the lines, in the order of the source file
+     * @throws IOException if the snapshot cannot be read or is corrupted
+     */
+    public static void read(Path path, int blockSize, Consumer<List<LigneRecensement>> consumer) throws IOException {
+        decode(path, blockSize, null);
+        decode(path, blockSize, consumer);
+    }
+
+    /**
+     * Decodes the records of a snapshot and checks its trailer.
+     *
+     * @param consumer receives the lines by blocks, or null to only check the snapshot
+     */
+    private static void decode(Path path, int blockSize, Consumer<List<LigneRecensement>> consumer) throws IOException {
+        try (BufferedInputStream buffered = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+            CRC32 crc = new CRC32();
+            DataInputStream in = new DataInputStream(new CheckedInputStream(buffered, crc));
+            readHeader(in);
+
+            List<String[]> dictionary = new ArrayList<>();
+            List<LigneRecensement> block = new ArrayList<>(blockSize);
+            long count = 0;
+            int reference;
+            while ((reference = readVarint(in)) != 0) {
+                int index = reference - 1;
+                if (index == dictionary.size()) {
+                    dictionary.add(new String[]{readString(in), readString(in), readString(in)});
+                } else if (index > dictionary.size()) {
+                    throw new IOException("Snapshot corrompu : département inconnu " + index);
+                }
+
+                String[] departement = dictionary.get(index);
+                LigneRecensement ligne = new LigneRecensement(departement[1], departement[2], departement[0],
+                        readString(in), readString(in), readString(in), readString(in),
+                        readVarint(in), readVarint(in));
+                count++;
+                if (consumer != null) {
+                    block.add(ligne);
+                    if (block.size() == blockSize) {
+                        consumer.accept(block);
+                        block = new ArrayList<>(blockSize);
+                    }
+                }
+            }
+
+            long expectedCrc = crc.getValue();
+            DataInputStream trailer = new DataInputStream(buffered);
+            if (trailer.readLong() != count || (trailer.readInt() & 0xFFFFFFFFL) != expectedCrc) {
+                throw new IOException("Snapshot corrompu : contrôle d'intégrité invalide");
+            }
+            if (!block.isEmpty()) {
+                consumer.accept(block);
+            }
+        }
+    }
+
+    /**
+     * Starts writing a snapshot. The snapshot replaces the file at {@code path} only once
+     * it is committed.
+     *
+     * @param path     the path of the snapshot
+     * @param checksum the checksum of the source CSV, in hexadecimal
+     * @return the writer of the snapshot
+     * @throws IOException if the snapshot cannot be created
+     */
+    public static Writer create(Path path, String checksum) throws IOException {
+        return new Writer(path, checksum);
+    }
+
+    /**
+     * Writes the lines of an import into a temporary file, moved over the snapshot on commit.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path path;
+        private final Path tmp;
+        private final OutputStream buffered;
+        private final CRC32 crc = new CRC32();
+        private final DataOutputStream out;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private long count;
+        private boolean committed;
+
+        private Writer(Path path, String checksum) throws IOException {
+            this.path = path;
+            Path parent = path.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            this.tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+            this.buffered = new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024);
+            this.out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.write(HexFormat.of().parseHex(checksum));
+        }
+
+        /**
+         * Appends a line to the snapshot.
+         *
+         * @param ligne the imported line
+         * @throws IOException if the line cannot be written
+         */
+        public void write(LigneRecensement ligne) throws IOException {
+            Integer index = dictionary.get(ligne.codeDepartement());
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(ligne.codeDepartement(), index);
+                writeVarint(out, index + 1);
+                writeString(out, ligne.codeDepartement());
+                writeString(out, ligne.codeRegion());
+                writeString(out, ligne.nomRegion());
+            } else {
+                writeVarint(out, index + 1);
+            }
+            writeString(out, ligne.codeArrondissement());
+            writeString(out, ligne.codeCanton());
+            writeString(out, ligne.codeVille());
+            writeString(out, ligne.nom());
+            writeVarint(out, ligne.nbHabitants());
+            writeVarint(out, ligne.nbHabitantsTotal());
+            count++;
+        }
+
+        /**
+         * Writes the trailer and replaces the previous snapshot.
+         *
+         * @throws IOException if the snapshot cannot be written
+         */
+        public void commit() throws IOException {
+            writeVarint(out, 0);
+            out.flush();
+            DataOutputStream trailer = new DataOutputStream(buffered);
+            trailer.writeLong(count);
+            trailer.writeInt((int) crc.getValue());
+            trailer.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        /**
+         * Discards the snapshot if it was not committed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                buffered.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static String readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("Format de snapshot non reconnu");
+        }
+        byte[] checksum = new byte[CHECKSUM_LENGTH];
+        in.readFully(checksum);
+        return HexFormat.of().formatHex(checksum);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Snapshot tronqué");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Snapshot corrompu : entier trop long");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Snapshot corrompu : chaîne de longueur " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
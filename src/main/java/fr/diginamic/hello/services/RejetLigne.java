@@ -0,0 +1,17 @@
+package fr.diginamic.hello.services;
+
+/**
+ * Reasons for which a line of the census file is not imported.
+ */
+public enum RejetLigne {
+    // Empty line, or fewer fields than expected
+    LIGNE_COURTE,
+    // Empty departement or city code
+    CODE_MANQUANT,
+    // Name shorter than 2 or longer than 255 characters
+    NOM_INVALIDE,
+    // Population missing, not a number or lower than 1
+    POPULATION_INVALIDE,
+    // City code already read earlier in the file
+    CODE_DUPLIQUE
+}
@@ -0,0 +1,353 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.dtos.ResultatLotDto;
+import fr.diginamic.hello.dtos.VilleLotDto;
+import fr.diginamic.hello.entity.Departement;
+import fr.diginamic.hello.entity.Ville;
+import fr.diginamic.hello.repository.DepartementRepository;
+import fr.diginamic.hello.repository.VilleRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Writes batches of cities sent to /villes/batch.
+ * <p>
+ * A batch runs in a single transaction: the departements and the existing cities it
+ * refers to are read with one {@code IN} query each, then the writes are flushed
+ * together, Hibernate grouping them into JDBC batches. Items that cannot be applied
+ * are reported in the result of the batch without stopping the others. The totals of
+ * the departements are adjusted in the same transaction.
+ */
+@Service
+public class VilleBatchService {
+
+    // Above this number of changed cities, the listeners reload the dataset once
+    // instead of reading back every city
+    private static final int EVENEMENTS_UNITAIRES_MAX = 100;
+
+    private final VilleRepository villeRepository;
+    private final DepartementRepository departementRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    // Each batch is committed in its own transaction
+    private final TransactionTemplate transactionTemplate;
+    // Maximum number of items of a batch
+    private final int maxSize;
+
+    /**
+     * Constructor to inject the batch dependencies.
+     *
+     * @param villeRepository       the repository of the cities
+     * @param departementRepository the repository of the departements
+     * @param eventPublisher        publishes the changes made to the cities
+     * @param transactionManager    the manager of the transaction of each batch
+     * @param maxSize               the maximum number of items of a batch
+     */
+    public VilleBatchService(VilleRepository villeRepository, DepartementRepository departementRepository,
+                             ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                             @Value("${recensement.batch.max-size:10000}") int maxSize) {
+        this.villeRepository = villeRepository;
+        this.departementRepository = departementRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Inserts a batch of cities.
+     *
+     * @param villes the cities to insert
+     * @return ResponseEntity containing the result of each city, or an error message if the batch is rejected
+     */
+    public ResponseEntity<?> insertVilles(List<VilleLotDto> villes) {
+        String erreur = checkLot(villes);
+        if (erreur != null) {
+            return ResponseEntity.badRequest().body(erreur);
+        }
+
+        ResultatLotDto[] resultats = new ResultatLotDto[villes.size()];
+        return execute(resultats, evenements -> {
+            Map<String, Departement> departements = findDepartements(villes);
+            Map<String, Integer> codesVille = findCodesVille(villes);
+
+            List<Ville> nouvelles = new ArrayList<>();
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < villes.size(); i++) {
+                VilleLotDto villeLot = villes.get(i);
+                ResultatLotDto rejet = check(i, villeLot, departements);
+                if (rejet == null && codesVille.putIfAbsent(villeLot.getCodeVille(), -1) != null) {
+                    rejet = new ResultatLotDto(i, null, HttpStatus.CONFLICT.value(),
+                            "Une ville avec le code " + villeLot.getCodeVille() + " existe déjà");
+                }
+                if (rejet != null) {
+                    resultats[i] = rejet;
+                    continue;
+                }
+
+                nouvelles.add(new Ville(villeLot.getCodeVille(), villeLot.getNom(), villeLot.getNbHabitants(),
+                        departements.get(villeLot.getCodeDepartement())));
+                indexes.add(i);
+            }
+
+            villeRepository.saveAll(nouvelles);
+            villeRepository.flush();
+            for (int j = 0; j < nouvelles.size(); j++) {
+                Ville ville = nouvelles.get(j);
+                resultats[indexes.get(j)] = new ResultatLotDto(indexes.get(j), ville.getId(), HttpStatus.CREATED.value(), null);
+                evenements.add(new VilleModifiee(ville.getId(), null, VilleModifiee.Etat.of(ville)));
+            }
+        });
+    }
+
+    /**
+     * Updates a batch of cities, each one identified by its id.
+     *
+     * @param villes the updated cities
+     * @return ResponseEntity containing the result of each city, or an error message if the batch is rejected
+     */
+    public ResponseEntity<?> updateVilles(List<VilleLotDto> villes) {
+        String erreur = checkLot(villes);
+        if (erreur != null) {
+            return ResponseEntity.badRequest().body(erreur);
+        }
+
+        ResultatLotDto[] resultats = new ResultatLotDto[villes.size()];
+        return execute(resultats, evenements -> {
+            Map<Integer, Ville> existantes = findVilles(villes.stream().filter(Objects::nonNull).map(VilleLotDto::getId).toList());
+            Map<String, Departement> departements = findDepartements(villes);
+            Map<String, Integer> codesVille = findCodesVille(villes);
+
+            for (int i = 0; i < villes.size(); i++) {
+                VilleLotDto villeLot = villes.get(i);
+                Integer id = villeLot == null ? null : villeLot.getId();
+                if (id == null || id <= 0) {
+                    resultats[i] = new ResultatLotDto(i, id, HttpStatus.BAD_REQUEST.value(), "L'id doit être strictement positif");
+                    continue;
+                }
+                Ville ville = existantes.get(id);
+                if (ville == null) {
+                    resultats[i] = new ResultatLotDto(i, id, HttpStatus.NOT_FOUND.value(), "Ville avec l'id " + id + " non trouvée");
+                    continue;
+                }
+                ResultatLotDto rejet = check(i, villeLot, departements);
+                Integer titulaire = codesVille.get(villeLot.getCodeVille());
+                if (rejet == null && titulaire != null && !titulaire.equals(id)) {
+                    rejet = new ResultatLotDto(i, id, HttpStatus.CONFLICT.value(),
+                            "Une ville avec le code " + villeLot.getCodeVille() + " existe déjà");
+                }
+                if (rejet != null) {
+                    rejet.setId(id);
+                    resultats[i] = rejet;
+                    continue;
+                }
+
+                VilleModifiee.Etat avant = VilleModifiee.Etat.of(ville);
+                codesVille.remove(ville.getCodeVille());
+                codesVille.put(villeLot.getCodeVille(), id);
+                ville.setCodeVille(villeLot.getCodeVille());
+                ville.setNom(villeLot.getNom());
+                ville.setNbHabitants(villeLot.getNbHabitants());
+                ville.setDepartement(departements.get(villeLot.getCodeDepartement()));
+
+                resultats[i] = new ResultatLotDto(i, id, HttpStatus.OK.value(), null);
+                evenements.add(new VilleModifiee(id, avant, VilleModifiee.Etat.of(ville)));
+            }
+            villeRepository.flush();
+        });
+    }
+
+    /**
+     * Deletes a batch of cities.
+     *
+     * @param ids the IDs of the cities to delete
+     * @return ResponseEntity containing the result of each city, or an error message if the batch is rejected
+     */
+    public ResponseEntity<?> deleteVilles(List<Integer> ids) {
+        String erreur = checkLot(ids);
+        if (erreur != null) {
+            return ResponseEntity.badRequest().body(erreur);
+        }
+
+        ResultatLotDto[] resultats = new ResultatLotDto[ids.size()];
+        return execute(resultats, evenements -> {
+            Map<Integer, Ville> existantes = findVilles(ids);
+
+            List<Integer> supprimees = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                Integer id = ids.get(i);
+                if (id == null || id <= 0) {
+                    resultats[i] = new ResultatLotDto(i, id, HttpStatus.BAD_REQUEST.value(), "L'id doit être strictement positif");
+                    continue;
+                }
+                // Removed from the map so an id repeated in the batch is only deleted once
+                Ville ville = existantes.remove(id);
+                if (ville == null) {
+                    resultats[i] = new ResultatLotDto(i, id, HttpStatus.NOT_FOUND.value(), "Ville avec l'id " + id + " non trouvée");
+                    continue;
+                }
+
+                supprimees.add(id);
+                resultats[i] = new ResultatLotDto(i, id, HttpStatus.OK.value(), null);
+                evenements.add(new VilleModifiee(id, VilleModifiee.Etat.of(ville), null));
+            }
+            if (!supprimees.isEmpty()) {
+                villeRepository.deleteAllByIdInBatch(supprimees);
+            }
+        });
+    }
+
+    /**
+     * Runs a batch in its own transaction, then publishes its changes.
+     *
+     * @param resultats the results of the items, filled by the batch
+     * @param lot       applies the batch, adding the changes it makes to the list it receives
+     */
+    private ResponseEntity<?> execute(ResultatLotDto[] resultats, Consumer<List<VilleModifiee>> lot) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<VilleModifiee> evenements = new ArrayList<>();
+                lot.accept(evenements);
+                addNbHabitants(evenements);
+                // Published within the transaction: the listeners run once it is committed
+                if (evenements.size() > EVENEMENTS_UNITAIRES_MAX) {
+                    eventPublisher.publishEvent(new RecensementModifie());
+                } else {
+                    evenements.forEach(eventPublisher::publishEvent);
+                }
+            });
+        } catch (DataAccessException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body("Lot annulé : " + e.getMostSpecificCause().getMessage());
+        }
+        return ResponseEntity.ok(Arrays.asList(resultats));
+    }
+
+    /**
+     * Applies the changes of population of a batch to the totals of the departements,
+     * with one update per departement whatever the number of its cities in the batch.
+     *
+     * @param evenements the changes made by the batch
+     */
+    private void addNbHabitants(List<VilleModifiee> evenements) {
+        // Sorted by code so that concurrent batches lock the departements in the same order
+        Map<String, Integer> ecarts = new TreeMap<>();
+        for (VilleModifiee evenement : evenements) {
+            if (evenement.avant() != null) {
+                ecarts.merge(evenement.avant().codeDepartement(), -evenement.avant().nbHabitants(), Integer::sum);
+            }
+            if (evenement.apres() != null) {
+                ecarts.merge(evenement.apres().codeDepartement(), evenement.apres().nbHabitants(), Integer::sum);
+            }
+        }
+        ecarts.forEach((code, ecart) -> {
+            if (ecart != 0) {
+                departementRepository.addNbHabitants(code, ecart);
+            }
+        });
+    }
+
+    private String checkLot(List<?> lot) {
+        if (lot == null || lot.isEmpty()) {
+            return "Le lot ne peut pas être vide";
+        }
+        if (lot.size() > maxSize) {
+            return "Le lot ne peut pas dépasser " + maxSize + " villes";
+        }
+        return null;
+    }
+
+    /**
+     * Checks the fields of a city and its departement.
+     *
+     * @return the rejection of the city, or null if it can be written
+     */
+    private static ResultatLotDto check(int index, VilleLotDto ville, Map<String, Departement> departements) {
+        if (ville == null) {
+            return new ResultatLotDto(index, null, HttpStatus.BAD_REQUEST.value(), "La ville ne peut pas être null");
+        }
+        if (ville.getCodeVille() == null || ville.getCodeVille().trim().length() < 2) {
+            return new ResultatLotDto(index, null, HttpStatus.BAD_REQUEST.value(), "Le code de la ville doit contenir au moins 2 caractères");
+        }
+        if (ville.getNom() == null || ville.getNom().trim().length() < 2) {
+            return new ResultatLotDto(index, null, HttpStatus.BAD_REQUEST.value(), "Le nom de la ville doit contenir au moins 2 caractères");
+        }
+        if (ville.getNbHabitants() < 1) {
+            return new ResultatLotDto(index, null, HttpStatus.BAD_REQUEST.value(), "Le nombre d'habitants doit être supérieur à 0");
+        }
+        if (ville.getCodeDepartement() == null) {
+            return new ResultatLotDto(index, null, HttpStatus.BAD_REQUEST.value(), "Le département doit être renseigné");
+        }
+        if (!departements.containsKey(ville.getCodeDepartement())) {
+            return new ResultatLotDto(index, null, HttpStatus.NOT_FOUND.value(),
+                    "Département avec le code " + ville.getCodeDepartement() + " non trouvé");
+        }
+        return null;
+    }
+
+    /**
+     * @return the departements referred to by a batch, by code
+     */
+    private Map<String, Departement> findDepartements(List<VilleLotDto> villes) {
+        List<String> codes = villes.stream()
+                .filter(Objects::nonNull)
+                .map(VilleLotDto::getCodeDepartement)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        if (codes.isEmpty()) {
+            return new HashMap<>();
+        }
+        return departementRepository.findByCodeIn(codes).stream()
+                .collect(Collectors.toMap(Departement::getCode, Function.identity()));
+    }
+
+    /**
+     * @return the IDs of the existing cities holding the city codes of a batch, by code
+     */
+    private Map<String, Integer> findCodesVille(List<VilleLotDto> villes) {
+        List<String> codes = villes.stream()
+                .filter(Objects::nonNull)
+                .map(VilleLotDto::getCodeVille)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        Map<String, Integer> codesVille = new HashMap<>();
+        if (!codes.isEmpty()) {
+            for (Object[] row : villeRepository.findIdsByCodeVilleIn(codes)) {
+                codesVille.put((String) row[1], (Integer) row[0]);
+            }
+        }
+        return codesVille;
+    }
+
+    /**
+     * @return the existing cities among some IDs, with their departement, by id
+     */
+    private Map<Integer, Ville> findVilles(List<Integer> ids) {
+        List<Integer> valides = ids.stream()
+                .filter(id -> id != null && id > 0)
+                .distinct()
+                .toList();
+        if (valides.isEmpty()) {
+            return new HashMap<>();
+        }
+        return villeRepository.findWithDepartementByIdIn(valides).stream()
+                .collect(Collectors.toMap(Ville::getId, Function.identity()));
+    }
+}
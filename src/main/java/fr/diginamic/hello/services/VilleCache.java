@@ -0,0 +1,203 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.dtos.CacheStatsDto;
+import fr.diginamic.hello.dtos.VilleDto;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of the cities looked up by id and by name.
+ * <p>
+ * Entries are evicted least recently used first once {@code maxSize} entries are held
+ * by a key space, and are ignored once older than {@code ttl}. Writes made through
+ * {@link VilleService} evict the id and the names of the changed city after commit, and
+ * a reload of the dataset empties the cache. A value loaded while an eviction happens
+ * is not stored, so a lookup racing with a write cannot put back a stale city.
+ * <p>
+ * Hits, misses and evictions are published through Micrometer under
+ * {@code recensement.cache.villes.*}, once Spring Boot binds the cache to the meter registry.
+ */
+@Component
+public class VilleCache implements MeterBinder {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<Integer, Entree> parId;
+    private final Map<String, Entree> parNom;
+    // Incremented by every eviction made for a write
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxSize the number of entries kept for each key space
+     * @param ttl     the time after which an entry is loaded again
+     */
+    public VilleCache(@Value("${recensement.cache.villes.max-size:10000}") int maxSize,
+                      @Value("${recensement.cache.villes.ttl:10m}") Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("La taille du cache des villes doit être supérieure à 0");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.parId = newLruMap();
+        this.parNom = newLruMap();
+    }
+
+    /**
+     * Registers the cache statistics.
+     *
+     * @param registry the registry the cache statistics are registered in
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("recensement.cache.villes.requetes", hits, LongAdder::sum)
+                .description("Lectures servies par le cache des villes")
+                .tag("resultat", "hit")
+                .register(registry);
+        FunctionCounter.builder("recensement.cache.villes.requetes", misses, LongAdder::sum)
+                .description("Lectures servies par le cache des villes")
+                .tag("resultat", "miss")
+                .register(registry);
+        FunctionCounter.builder("recensement.cache.villes.evictions", evictions, LongAdder::sum)
+                .description("Entrées évincées par taille ou expiration")
+                .register(registry);
+        FunctionCounter.builder("recensement.cache.villes.invalidations", invalidations, LongAdder::sum)
+                .description("Entrées invalidées par une écriture")
+                .register(registry);
+        Gauge.builder("recensement.cache.villes.taille", this, VilleCache::size)
+                .description("Entrées du cache des villes")
+                .register(registry);
+    }
+
+    /**
+     * Looks a city up by id, loading it on a miss.
+     *
+     * @param id     the ID of the city
+     * @param loader loads the city, returning null if it does not exist
+     * @return the city, or null if it does not exist
+     */
+    public VilleDto getById(int id, Supplier<VilleDto> loader) {
+        return get(parId, id, loader);
+    }
+
+    /**
+     * Looks a city up by name, case-insensitively, loading it on a miss.
+     *
+     * @param nom    the name of the city
+     * @param loader loads the city, returning null if it does not exist
+     * @return the city, or null if it does not exist
+     */
+    public VilleDto getByNom(String nom, Supplier<VilleDto> loader) {
+        return get(parNom, normalize(nom), loader);
+    }
+
+    /**
+     * Evicts the id and the former and new names of a changed city.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onVilleModifiee(VilleModifiee event) {
+        generation++;
+        remove(parId, event.id());
+        if (event.avant() != null) {
+            remove(parNom, normalize(event.avant().nom()));
+        }
+        if (event.apres() != null) {
+            remove(parNom, normalize(event.apres().nom()));
+        }
+    }
+
+    /**
+     * Empties the cache once the dataset has been reloaded or a departement has changed.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onRecensementModifie(RecensementModifie event) {
+        generation++;
+        invalidations.add(parId.size() + parNom.size());
+        parId.clear();
+        parNom.clear();
+    }
+
+    /**
+     * @return the statistics of the cache
+     */
+    public synchronized CacheStatsDto getStats() {
+        return new CacheStatsDto(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(),
+                parId.size() + parNom.size(), maxSize * 2);
+    }
+
+    private <K> VilleDto get(Map<K, Entree> map, K key, Supplier<VilleDto> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            Entree entree = map.get(key);
+            if (entree != null) {
+                if (System.nanoTime() - entree.loadedAt < ttlNanos) {
+                    hits.increment();
+                    return entree.ville;
+                }
+                map.remove(key);
+                evictions.increment();
+            }
+            loadGeneration = generation;
+        }
+
+        misses.increment();
+        VilleDto ville = loader.get();
+        if (ville != null) {
+            synchronized (this) {
+                if (generation == loadGeneration) {
+                    map.put(key, new Entree(ville, System.nanoTime()));
+                }
+            }
+        }
+        return ville;
+    }
+
+    private synchronized int size() {
+        return parId.size() + parNom.size();
+    }
+
+    private <K> void remove(Map<K, Entree> map, K key) {
+        if (key != null && map.remove(key) != null) {
+            invalidations.increment();
+        }
+    }
+
+    private <K> Map<K, Entree> newLruMap() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entree> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    private static String normalize(String nom) {
+        return nom == null ? null : nom.toUpperCase(Locale.ROOT);
+    }
+
+    private record Entree(VilleDto ville, long loadedAt) {
+    }
+}
@@ -0,0 +1,27 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.entity.Ville;
+
+/**
+ * Published when a city is inserted, updated or deleted through {@link VilleService}.
+ *
+ * @param id    the ID of the city
+ * @param avant the city before the change, null for an insertion
+ * @param apres the city after the change, null for a deletion
+ */
+public record VilleModifiee(Integer id, Etat avant, Etat apres) {
+
+    /**
+     * The columns of a city the listeners depend on.
+     *
+     * @param nom             the name of the city
+     * @param nbHabitants     the population of the city
+     * @param codeDepartement the code of the departement of the city
+     */
+    public record Etat(String nom, int nbHabitants, String codeDepartement) {
+
+        public static Etat of(Ville ville) {
+            return new Etat(ville.getNom(), ville.getNbHabitants(), ville.getDepartement().getCode());
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.dtos.VilleMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * In-memory index of the city names for prefix searches.
+ * <p>
+ * The cities are held in an array sorted by normalized name, without accents and in
+ * lower case, so the cities starting with a prefix form a contiguous range found by two
+ * binary searches. The array is rebuilt when the dataset is reloaded and copied on each
+ * city write, readers always seeing a complete array.
+ */
+@Component
+public class VillePrefixIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VillePrefixIndex.class);
+    private static final Comparator<Entree> ORDRE = Comparator.comparing(Entree::cle).thenComparingInt(Entree::id);
+    // Most populated cities first, then by name
+    private static final Comparator<VilleDto> CLASSEMENT = Comparator.comparingInt(VilleDto::getNbHabitants).reversed()
+            .thenComparing(VilleDto::getNom);
+
+    private final VilleDao villeDao;
+    // Loads run in their own read-only transaction, after the change has been committed
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Entree[] entrees = new Entree[0];
+    private volatile boolean ready;
+
+    public VillePrefixIndex(VilleDao villeDao, PlatformTransactionManager transactionManager) {
+        this.villeDao = villeDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Rebuilds the index once the dataset has been reloaded.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onRecensementModifie(RecensementModifie event) {
+        List<VilleResume> villes = transactionTemplate.execute(status -> villeDao.getVillesResumees());
+        Entree[] nouvelles = new Entree[villes.size()];
+        for (int i = 0; i < nouvelles.length; i++) {
+            nouvelles[i] = Entree.of(villes.get(i));
+        }
+        Arrays.sort(nouvelles, ORDRE);
+
+        entrees = nouvelles;
+        ready = true;
+        LOGGER.info("Index des noms de villes construit : {} villes", nouvelles.length);
+    }
+
+    /**
+     * Replaces the entry of a changed city.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onVilleModifiee(VilleModifiee event) {
+        Entree[] courantes = entrees;
+        if (event.avant() != null) {
+            int index = indexOf(courantes, normalize(event.avant().nom()), event.id());
+            if (index >= 0) {
+                courantes = remove(courantes, index);
+            }
+        }
+        if (event.apres() != null) {
+            VilleResume ville = transactionTemplate.execute(status -> villeDao.getVilleResumee(event.id()));
+            if (ville != null) {
+                courantes = insert(courantes, Entree.of(ville));
+            }
+        }
+        entrees = courantes;
+    }
+
+    /**
+     * @return whether the index has been built since startup
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Finds the cities whose name starts with a prefix, ignoring case and accents.
+     *
+     * @param prefix the start of the name
+     * @param limit  the maximum number of cities returned
+     * @return the matching cities, most populated first
+     */
+    public List<VilleDto> search(String prefix, int limit) {
+        Entree[] snapshot = entrees;
+        String cle = normalize(prefix);
+        int from = lowerBound(snapshot, cle);
+        int to = lowerBound(snapshot, cle + Character.MAX_VALUE);
+
+        if (to - from <= limit) {
+            List<VilleDto> villes = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                villes.add(snapshot[i].ville());
+            }
+            villes.sort(CLASSEMENT);
+            return villes;
+        }
+
+        // Keeps the limit most populated cities of the range, the least populated at the head
+        PriorityQueue<VilleDto> top = new PriorityQueue<>(limit + 1, CLASSEMENT.reversed());
+        for (int i = from; i < to; i++) {
+            top.add(snapshot[i].ville());
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<VilleDto> villes = new ArrayList<>(top);
+        villes.sort(CLASSEMENT);
+        return villes;
+    }
+
+    /**
+     * Normalizes a name for the index: accents removed and lower case.
+     *
+     * @param nom the name
+     * @return the normalized name
+     */
+    static String normalize(String nom) {
+        return NomsVilles.sansAccents(nom);
+    }
+
+    /**
+     * @return the index of the first entry whose key is not lower than {@code cle}
+     */
+    private static int lowerBound(Entree[] entrees, String cle) {
+        int low = 0;
+        int high = entrees.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entrees[mid].cle().compareTo(cle) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int indexOf(Entree[] entrees, String cle, int id) {
+        for (int i = lowerBound(entrees, cle); i < entrees.length && entrees[i].cle().equals(cle); i++) {
+            if (entrees[i].id() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Entree[] remove(Entree[] entrees, int index) {
+        Entree[] copie = new Entree[entrees.length - 1];
+        System.arraycopy(entrees, 0, copie, 0, index);
+        System.arraycopy(entrees, index + 1, copie, index, entrees.length - index - 1);
+        return copie;
+    }
+
+    private static Entree[] insert(Entree[] entrees, Entree entree) {
+        int index = Arrays.binarySearch(entrees, entree, ORDRE);
+        if (index >= 0) {
+            Entree[] copie = entrees.clone();
+            copie[index] = entree;
+            return copie;
+        }
+        index = -index - 1;
+        Entree[] copie = new Entree[entrees.length + 1];
+        System.arraycopy(entrees, 0, copie, 0, index);
+        copie[index] = entree;
+        System.arraycopy(entrees, index, copie, index + 1, entrees.length - index);
+        return copie;
+    }
+
+    /**
+     * A city of the index.
+     *
+     * @param cle   the normalized name of the city
+     * @param id    the ID of the city
+     * @param ville the city returned by searches
+     */
+    private record Entree(String cle, int id, VilleDto ville) {
+
+        private static Entree of(VilleResume ville) {
+            return new Entree(normalize(ville.nom()), ville.id(), VilleMapper.toDto(ville));
+        }
+    }
+}
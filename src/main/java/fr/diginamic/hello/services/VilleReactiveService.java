@@ -0,0 +1,229 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.dtos.VilleMapper;
+import fr.diginamic.hello.repository.VilleRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Read-only queries on the cities as {@link Flux} of {@link VilleDto}, for the reactive
+ * API under /reactive/villes.
+ * <p>
+ * The cities are read from the in-memory indexes once they are built: the query runs
+ * when the Flux is subscribed, and its cities are read from the index as the subscriber
+ * requests them, so a slow client holds a position in an immutable snapshot rather than
+ * a thread or a list of results. Until the indexes are built, the queries are run on the
+ * database, on the bounded elastic scheduler so the blocking JDBC calls never run on the
+ * thread of the subscriber; the population queries read it by keyset pages, the next
+ * page being read once the subscriber has requested the cities of the previous one.
+ * <p>
+ * Invalid parameters are signalled as a {@link ResponseStatusException} before any city.
+ */
+@Service
+public class VilleReactiveService {
+
+    private final VilleRepository villeRepository;
+    // Reads the cities by population in keyset pages while the index is built
+    private final VilleDao villeDao;
+    private final PopulationIndex populationIndex;
+    private final VillePrefixIndex villePrefixIndex;
+    private final VilleTrigramIndex villeTrigramIndex;
+    // Number of cities of a page read from the database
+    private final int taillePage;
+
+    /**
+     * Constructor to inject the indexes and their database fallback.
+     *
+     * @param villeRepository   the repository of the cities, read while the indexes are built
+     * @param villeDao          reads the cities by population while the index is built
+     * @param populationIndex   the cities sorted by population
+     * @param villePrefixIndex  the city names, for prefix searches
+     * @param villeTrigramIndex the trigrams of the city names, for approximate searches
+     * @param taillePage        the number of cities of a page read from the database
+     */
+    public VilleReactiveService(VilleRepository villeRepository, VilleDao villeDao, PopulationIndex populationIndex,
+                                VillePrefixIndex villePrefixIndex, VilleTrigramIndex villeTrigramIndex,
+                                @Value("${recensement.reactive.taille-page:500}") int taillePage) {
+        if (taillePage < 1) {
+            throw new IllegalArgumentException("La taille des pages lues en base doit être supérieure à 0");
+        }
+        this.villeRepository = villeRepository;
+        this.villeDao = villeDao;
+        this.populationIndex = populationIndex;
+        this.villePrefixIndex = villePrefixIndex;
+        this.villeTrigramIndex = villeTrigramIndex;
+        this.taillePage = taillePage;
+    }
+
+    /**
+     * Finds the cities above a population, in the whole country or in a departement.
+     *
+     * @param codeDepartement the code of a departement, or null for the whole country
+     * @param min             the threshold, exclusive
+     * @return the cities, most populated first
+     */
+    public Flux<VilleDto> findGreaterThan(String codeDepartement, int min) {
+        if (min <= 0) {
+            return badRequest("Le nombre de villes doit être supérieur à 0");
+        }
+        return read(populationIndex.isReady(),
+                () -> populationIndex.streamGreaterThan(codeDepartement, min),
+                parPopulation(codeDepartement, null, ville -> ville.nbHabitants() > min));
+    }
+
+    /**
+     * Finds the cities within a population range, in the whole country or in a departement.
+     *
+     * @param codeDepartement the code of a departement, or null for the whole country
+     * @param min             the minimum population
+     * @param max             the maximum population
+     * @return the cities, most populated first
+     */
+    public Flux<VilleDto> findBetween(String codeDepartement, int min, int max) {
+        if (min < 0 || max < 0) {
+            return badRequest("Les valeurs de population doivent être positives");
+        }
+        if (min > max) {
+            return badRequest("La valeur minimale ne peut pas être supérieure à la valeur maximale");
+        }
+        return read(populationIndex.isReady(),
+                () -> populationIndex.streamBetween(codeDepartement, min, max),
+                parPopulation(codeDepartement, max, ville -> ville.nbHabitants() >= min));
+    }
+
+    /**
+     * Finds the most populated cities of a departement.
+     *
+     * @param codeDepartement the code of the departement
+     * @param n               the number of cities
+     * @return the n most populated cities, most populated first
+     */
+    public Flux<VilleDto> findTop(String codeDepartement, int n) {
+        if (codeDepartement == null || codeDepartement.isBlank()) {
+            return badRequest("Le code du département ne peut pas être vide");
+        }
+        if (n <= 0) {
+            return badRequest("Le nombre de villes doit être supérieur à 0");
+        }
+        return read(populationIndex.isReady(),
+                () -> populationIndex.findTop(codeDepartement, n).stream(),
+                liste(() -> villeRepository.findDtoByDepartement_CodeOrderByNbHabitantsDesc(codeDepartement, Limit.of(n))));
+    }
+
+    /**
+     * Finds the cities whose name starts with a prefix, ignoring case and accents.
+     *
+     * @param prefix the start of the name
+     * @param limit  the maximum number of cities
+     * @return the cities, most populated first
+     */
+    public Flux<VilleDto> searchStartingWith(String prefix, int limit) {
+        if (prefix == null || prefix.isEmpty()) {
+            return badRequest("Le préfixe ne peut pas être vide");
+        }
+        if (limit <= 0) {
+            return badRequest("La limite doit être supérieure à 0");
+        }
+        return read(villePrefixIndex.isReady(),
+                () -> villePrefixIndex.search(prefix, limit).stream(),
+                liste(() -> villeRepository.findDtoByNomStartingWithIgnoreCase(prefix).stream()
+                        .sorted(Comparator.comparingInt(VilleDto::getNbHabitants).reversed())
+                        .limit(limit)
+                        .toList()));
+    }
+
+    /**
+     * Finds the cities whose name is closest to a text, ignoring case, accents and punctuation.
+     * Answered by the trigram index only.
+     *
+     * @param nom   the text searched
+     * @param limit the maximum number of cities
+     * @return the cities, the most similar first, then the most populated
+     */
+    public Flux<VilleDto> searchLike(String nom, int limit) {
+        if (nom == null || nom.isBlank()) {
+            return badRequest("Le nom recherché ne peut pas être vide");
+        }
+        if (limit <= 0) {
+            return badRequest("La limite doit être supérieure à 0");
+        }
+        if (!villeTrigramIndex.isReady()) {
+            return Flux.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "La recherche approchée est disponible une fois l'index des noms construit"));
+        }
+        return Flux.defer(() -> Flux.fromIterable(villeTrigramIndex.search(nom, limit)));
+    }
+
+    /**
+     * Reads the cities of a query from an index when it is built, otherwise from the database.
+     *
+     * @param indexReady whether the index answering the query is built
+     * @param index      the query on the index, its cities read as they are requested
+     * @param database   the same query on the database
+     * @return the cities, read when the Flux is subscribed
+     */
+    private static Flux<VilleDto> read(boolean indexReady, Supplier<Stream<? extends VilleDto>> index, Flux<VilleDto> database) {
+        if (indexReady) {
+            return Flux.fromStream(index);
+        }
+        return database;
+    }
+
+    /**
+     * Runs a bounded query on the database.
+     */
+    private static Flux<VilleDto> liste(Supplier<List<VilleDto>> query) {
+        return Mono.fromSupplier(query)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(Function.identity());
+    }
+
+    /**
+     * Reads the cities by descending population in keyset pages, until a city fails the
+     * condition. A page is read once the cities of the previous one have been requested,
+     * and no page is read after the subscriber cancels.
+     *
+     * @param codeDepartement the code of a departement, or null for the whole country
+     * @param max             the maximum population, inclusive, or null to start from the most populated city
+     * @param tant            the condition of the cities read, false from the first city below the range
+     * @return the cities, most populated first
+     */
+    private Flux<VilleDto> parPopulation(String codeDepartement, Integer max, Predicate<VilleResume> tant) {
+        return page(codeDepartement, max, Integer.MAX_VALUE)
+                .expand(villes -> {
+                    VilleResume derniere = villes.isEmpty() ? null : villes.get(villes.size() - 1);
+                    if (villes.size() < taillePage || !tant.test(derniere)) {
+                        return Mono.empty();
+                    }
+                    return page(codeDepartement, derniere.nbHabitants(), derniere.id());
+                })
+                .concatMapIterable(Function.identity(), 1)
+                .takeWhile(tant)
+                .map(VilleMapper::toDto);
+    }
+
+    private Mono<List<VilleResume>> page(String codeDepartement, Integer nbHabitants, int lastId) {
+        return Mono.fromSupplier(() -> villeDao.getVillesParPopulationApres(codeDepartement, nbHabitants, lastId, taillePage))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static Flux<VilleDto> badRequest(String message) {
+        return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, message));
+    }
+}
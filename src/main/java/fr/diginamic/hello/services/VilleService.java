@@ -1,12 +1,18 @@
 package fr.diginamic.hello.services;
 
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.CacheStatsDto;
 import fr.diginamic.hello.dtos.VilleDto;
 import fr.diginamic.hello.dtos.VilleMapper;
+import fr.diginamic.hello.dtos.VillesCurseurDto;
 import fr.diginamic.hello.entity.Departement;
 import fr.diginamic.hello.entity.Ville;
 import fr.diginamic.hello.repository.DepartementRepository;
 import fr.diginamic.hello.repository.VilleRepository;
 import jakarta.transaction.Transactional;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
@@ -15,23 +21,57 @@ import org.springframework.stereotype.Service;
 import org.springframework.validation.BindingResult;
 
 import java.awt.print.Pageable;
+import java.net.URI;
+import java.util.Comparator;
 import java.util.List;
 
 @Service
 public class VilleService {
 
+    /**
+     * Maximum number of cities of a page read with a cursor; larger sizes are reduced to it.
+     */
+    public static final int TAILLE_MAX_CURSEUR = 1000;
+
     private final VilleRepository villeRepository;
+    // Seek queries of the keyset pagination
+    private final VilleDao villeDao;
     private final DepartementRepository departementRepository;
+    // Publishes every change of a city to the rollups and indexes built from the dataset
+    private final ApplicationEventPublisher eventPublisher;
+    // Cities looked up by id and by name, invalidated by the events published here
+    private final VilleCache villeCache;
+    // City names, for prefix searches
+    private final VillePrefixIndex villePrefixIndex;
+    // Trigrams of the city names, for approximate searches
+    private final VilleTrigramIndex villeTrigramIndex;
+    // Cities sorted by population, for range and threshold queries
+    private final PopulationIndex populationIndex;
 
 
     /**
      * @param villeRepository
+     * @param villeDao
      * @param departementRepository
+     * @param eventPublisher
+     * @param villeCache
+     * @param villePrefixIndex
+     * @param villeTrigramIndex
+     * @param populationIndex
      */
-    public VilleService(VilleRepository villeRepository, DepartementRepository departementRepository) {
+    public VilleService(VilleRepository villeRepository, VilleDao villeDao, DepartementRepository departementRepository,
+                        ApplicationEventPublisher eventPublisher, VilleCache villeCache,
+                        VillePrefixIndex villePrefixIndex, VilleTrigramIndex villeTrigramIndex,
+                        PopulationIndex populationIndex) {
 
         this.villeRepository = villeRepository;
+        this.villeDao = villeDao;
         this.departementRepository = departementRepository;
+        this.eventPublisher = eventPublisher;
+        this.villeCache = villeCache;
+        this.villePrefixIndex = villePrefixIndex;
+        this.villeTrigramIndex = villeTrigramIndex;
+        this.populationIndex = populationIndex;
     }
 
     /**
@@ -44,91 +84,190 @@ public class VilleService {
     @Transactional
     public ResponseEntity<?> extractVilles(int page, int size) {
         PageRequest pageRequest = PageRequest.of(page, size);
-        Page<Ville> villes = villeRepository.findAll(pageRequest);
+        Page<VilleDto> villesDto = villeRepository.findAllDto(pageRequest);
 
-        if (villes.isEmpty()) {
+        if (villesDto.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NO_CONTENT)
                     .body("Aucune ville trouvée");
         }
 
-        Page<VilleDto> villesDto = villes.map(VilleMapper::toDto);
         return ResponseEntity.ok(villesDto);
     }
 
     /**
-     * Retrieves a Ville entity by its ID.
+     * Retrieves a page of cities with keyset pagination: each page starts after the last
+     * city of the previous one through an index seek, so deep pages cost the same as the
+     * first one. The order is carried by the cursor once the first page has been read.
+     *
+     * @param curseur the token of the page, null for the first page
+     * @param tri     the order of the first page, {@code id} or {@code population}
+     * @param size    the number of cities of the page, at most {@link #TAILLE_MAX_CURSEUR}
+     * @param count   whether the total number of cities is computed
+     * @return ResponseEntity containing the cities of the page and the token of the next page
+     */
+    @Transactional
+    public ResponseEntity<?> extractVillesParCurseur(String curseur, String tri, int size, boolean count) {
+        if (size <= 0) {
+            return ResponseEntity.badRequest().body("La taille de la page doit être supérieure à 0");
+        }
+        size = Math.min(size, TAILLE_MAX_CURSEUR);
+
+        CurseurVilles position;
+        try {
+            position = curseur == null ? null : CurseurVilles.decode(curseur);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        CurseurVilles.Tri ordre;
+        if (position != null) {
+            ordre = position.tri();
+        } else if ("id".equalsIgnoreCase(tri)) {
+            ordre = CurseurVilles.Tri.ID;
+        } else if ("population".equalsIgnoreCase(tri)) {
+            ordre = CurseurVilles.Tri.POPULATION;
+        } else {
+            return ResponseEntity.badRequest().body("Tri inconnu : " + tri);
+        }
+
+        // One more city than asked for tells whether a next page exists
+        List<VilleResume> villes = ordre == CurseurVilles.Tri.ID
+                ? villeDao.getVillesApres(position == null ? 0 : position.id(), size + 1)
+                : villeDao.getVillesParPopulationApres(position == null ? null : position.nbHabitants(),
+                position == null ? 0 : position.id(), size + 1);
+
+        String suivant = null;
+        if (villes.size() > size) {
+            villes = villes.subList(0, size);
+            VilleResume derniere = villes.get(size - 1);
+            suivant = new CurseurVilles(ordre, derniere.nbHabitants(), derniere.id()).encode();
+        }
+
+        List<VilleDto> villesDto = villes.stream().map(VilleMapper::toDto).toList();
+        Long total = count ? villeDao.countVilles() : null;
+        return ResponseEntity.ok(new VillesCurseurDto(villesDto, suivant, total));
+    }
+
+    /**
+     * Retrieves a Ville entity by its ID, from the cache when possible.
      *
      * @param id the ID of the Ville to retrieve
      * @return ResponseEntity containing the Ville entity with the specified ID
      */
-    @Transactional
     public ResponseEntity<?> extractVilleById(int id) {
         if (id <= 0) {
             return ResponseEntity.badRequest().body("L'id de la ville doit être supérieur à 0");
         }
 
-        Ville ville = villeRepository.findById(id).orElse(null);
-        if (ville == null) {
+        VilleDto villeDto = villeCache.getById(id, () -> villeRepository.findDtoById(id).orElse(null));
+        if (villeDto == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("Ville avec l'id " + id + " non trouvée");
         }
 
-        VilleDto villeDto = VilleMapper.toDto(ville);
         return ResponseEntity.ok(villeDto);
     }
 
     /**
-     * Retrieves a Ville entity by its name.
+     * Retrieves a Ville entity by its name, from the cache when possible.
      *
      * @param nom the name of the Ville to search for
      * @return ResponseEntity containing the Ville entity with the specified name
      */
-    @Transactional
     public ResponseEntity<?> extractVilleByName(String nom) {
         if (nom == null || nom.isEmpty()) {
             return ResponseEntity.badRequest().body("Le nom de la ville ne peut pas être vide");
         }
-        Ville ville = villeRepository.findByNomIgnoreCase(nom);
-        if (ville == null) {
+
+        VilleDto villeDto = villeCache.getByNom(nom, () -> villeRepository.findDtoByNomIgnoreCase(nom));
+        if (villeDto == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("Aucune ville trouvée avec le nom " + nom);
         }
 
-        VilleDto villeDto = VilleMapper.toDto(ville);
         return ResponseEntity.ok(villeDto);
     }
 
     /**
-     * Retrieves a list of Ville starting by a specified prefix
+     * @return the hit, miss and eviction counts of the cache of cities
+     */
+    public CacheStatsDto extractCacheStats() {
+        return villeCache.getStats();
+    }
+
+    /**
+     * Retrieves a list of Ville starting by a specified prefix, ignoring case and accents,
+     * the most populated first. The search is answered by the in-memory index of names,
+     * or by the database while the index is being built.
      *
      * @param prefix
+     * @param limit  the maximum number of cities returned, null for all of them
      * @return ResponseEntity containing a list of villes starting by a specified string
      */
     @Transactional
-    public ResponseEntity<?> extractVilleStartsWith(String prefix) {
+    public ResponseEntity<?> extractVilleStartsWith(String prefix, Integer limit) {
         if (prefix == null || prefix.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
+        if (limit != null && limit <= 0) {
+            return ResponseEntity.badRequest().body("La limite doit être supérieure à 0");
+        }
 
-        List<Ville> villes = villeRepository.findByNomStartingWithIgnoreCase(prefix);
-        if (villes.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(villes);
+        int max = limit == null ? Integer.MAX_VALUE : limit;
+        List<VilleDto> villesDto;
+        if (villePrefixIndex.isReady()) {
+            villesDto = villePrefixIndex.search(prefix, max);
+        } else {
+            villesDto = villeRepository.findDtoByNomStartingWithIgnoreCase(prefix).stream()
+                    .sorted(Comparator.comparingInt(VilleDto::getNbHabitants).reversed())
+                    .limit(max)
+                    .toList();
         }
 
-        List<VilleDto> villesDto = villes.stream()
-                .map(VilleMapper::toDto)
-                .toList();
+        if (villesDto.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(villesDto);
+        }
+        return ResponseEntity.ok(villesDto);
+    }
+
+    /**
+     * Retrieves the cities whose name is closest to a text, ignoring case, accents and
+     * punctuation, so that "abergement clemenciat" finds "L' Abergement-Clémenciat".
+     * The search is answered by the in-memory trigram index only.
+     *
+     * @param nom   the text searched
+     * @param limit the maximum number of cities returned
+     * @return ResponseEntity containing the closest cities, the most similar first, then the most populated
+     */
+    public ResponseEntity<?> extractVillesProches(String nom, int limit) {
+        if (nom == null || nom.isBlank()) {
+            return ResponseEntity.badRequest().body("Le nom recherché ne peut pas être vide");
+        }
+        if (limit <= 0) {
+            return ResponseEntity.badRequest().body("La limite doit être supérieure à 0");
+        }
+        if (!villeTrigramIndex.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("La recherche approchée est disponible une fois l'index des noms construit");
+        }
+
+        List<VilleDto> villesDto = villeTrigramIndex.search(nom, limit);
+        if (villesDto.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(villesDto);
+        }
         return ResponseEntity.ok(villesDto);
     }
 
     /**
      * Inserts a new Ville entity into the database.
      *
-     * @param ville the Ville object to insert
-     * @return ResponseEntity containing a list of all Ville entities after the insertion or an error message
+     * @param ville       the Ville object to insert
+     * @param result      the validation result (BindingResult)
+     * @param retourListe whether all the cities are returned instead of the created one
+     * @return ResponseEntity containing the created city and its location, or all the cities, or an error message
      */
     @Transactional
-    public ResponseEntity<?> insertVille(Ville ville, BindingResult result) {
+    public ResponseEntity<?> insertVille(Ville ville, BindingResult result, boolean retourListe) {
         if (result.hasErrors()) {
             return ResponseEntity.badRequest().body(result.getAllErrors());
         }
@@ -150,13 +289,11 @@ public class VilleService {
 
         ville.setDepartement(dep);
         villeRepository.save(ville);
+        departementRepository.addNbHabitants(dep.getCode(), ville.getNbHabitants());
+        eventPublisher.publishEvent(new VilleModifiee(ville.getId(), null, VilleModifiee.Etat.of(ville)));
 
-        List<Ville> villes = villeRepository.findAll();
-        List<VilleDto> villesDto = villes.stream()
-                .map(VilleMapper::toDto)
-                .toList();
-
-        return ResponseEntity.status(HttpStatus.CREATED).body(villesDto);
+        return ResponseEntity.created(location(ville))
+                .body(retourListe ? villeRepository.findAllDto() : VilleMapper.toDto(ville));
     }
 
     /**
@@ -165,10 +302,11 @@ public class VilleService {
      * @param idVille      the ID of the Ville to update
      * @param villeUpdated the updated Ville object
      * @param result       the validation result (BindingResult)
-     * @return ResponseEntity containing a list of all Ville entities after insertion or an error message
+     * @param retourListe  whether all the cities are returned instead of the updated one
+     * @return ResponseEntity containing the updated city and its location, or all the cities, or an error message
      */
     @Transactional
-    public ResponseEntity<?> updateVille(int idVille, Ville villeUpdated, BindingResult result) {
+    public ResponseEntity<?> updateVille(int idVille, Ville villeUpdated, BindingResult result, boolean retourListe) {
         if (result.hasErrors()) {
             return ResponseEntity.badRequest().body(result.getAllErrors());
         }
@@ -197,19 +335,32 @@ public class VilleService {
                     .body("Département non trouvé pour code " + villeUpdated.getDepartement().getCode());
         }
 
+        VilleModifiee.Etat avant = VilleModifiee.Etat.of(existingVille);
+
         existingVille.setNom(villeUpdated.getNom());
         existingVille.setNbHabitants(villeUpdated.getNbHabitants());
         existingVille.setDepartement(dep);
         existingVille.setCodeVille(villeUpdated.getCodeVille());
 
         villeRepository.save(existingVille);
+        if (!avant.codeDepartement().equals(dep.getCode())) {
+            departementRepository.addNbHabitants(avant.codeDepartement(), -avant.nbHabitants());
+            departementRepository.addNbHabitants(dep.getCode(), existingVille.getNbHabitants());
+        } else if (existingVille.getNbHabitants() != avant.nbHabitants()) {
+            departementRepository.addNbHabitants(dep.getCode(), existingVille.getNbHabitants() - avant.nbHabitants());
+        }
+        eventPublisher.publishEvent(new VilleModifiee(idVille, avant, VilleModifiee.Etat.of(existingVille)));
 
-        List<Ville> villes = villeRepository.findAll();
-        List<VilleDto> villesDto = villes.stream()
-                .map(VilleMapper::toDto)
-                .toList();
+        return ResponseEntity.ok()
+                .location(location(existingVille))
+                .body(retourListe ? villeRepository.findAllDto() : VilleMapper.toDto(existingVille));
+    }
 
-        return ResponseEntity.ok(villesDto);
+    /**
+     * @return the path at which a city is read
+     */
+    private static URI location(Ville ville) {
+        return URI.create("/villes/id/" + ville.getId());
     }
 
     /**
@@ -225,6 +376,8 @@ public class VilleService {
         }
         return villeRepository.findById(idVille).map(ville -> {
             villeRepository.delete(ville);
+            departementRepository.addNbHabitants(ville.getDepartement().getCode(), -ville.getNbHabitants());
+            eventPublisher.publishEvent(new VilleModifiee(idVille, VilleModifiee.Etat.of(ville), null));
             return ResponseEntity.ok("Ville supprimée avec succès avec l'id : " + idVille);
         }).orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body("Ville avec l'id " + idVille + " non trouvée"));
@@ -243,15 +396,16 @@ public class VilleService {
             return ResponseEntity.badRequest().body("Le nombre de villes doit être supérieur à 0");
         }
 
-        List<Ville> villes = villeRepository.findByNbHabitantsGreaterThanOrderByNbHabitantsDesc(min);
-        if (villes.isEmpty()) {
+        List<VilleDto> villesDto;
+        if (populationIndex.isReady()) {
+            villesDto = populationIndex.findGreaterThan(null, min);
+        } else {
+            villesDto = villeRepository.findDtoByNbHabitantsGreaterThanOrderByNbHabitantsDesc(min);
+        }
+        if (villesDto.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(List.of());
         }
 
-        List<VilleDto> villesDto = villes.stream()
-                .map(VilleMapper::toDto)
-                .toList();
-
         return ResponseEntity.ok(villesDto);
     }
 
@@ -272,10 +426,11 @@ public class VilleService {
             return ResponseEntity.badRequest().body("La valeur minimale ne peut pas être supérieure à la valeur maximale");
         }
 
-        List<Ville> villes = villeRepository.findByNbHabitantsBetweenOrderByNbHabitantsDesc(min, max);
-        List<VilleDto> villeDto = villes.stream().map(VilleMapper::toDto).toList();
+        if (populationIndex.isReady()) {
+            return ResponseEntity.ok(populationIndex.findBetween(null, min, max));
+        }
 
-        return ResponseEntity.ok(villeDto);
+        return ResponseEntity.ok(villeRepository.findDtoByNbHabitantsBetweenOrderByNbHabitantsDesc(min, max));
     }
 
     /**
@@ -294,10 +449,11 @@ public class VilleService {
             return ResponseEntity.badRequest().body("Le nombre de villes doit être supérieur à 0");
         }
 
-        List<Ville> villes = villeRepository.findByDepartement_CodeAndNbHabitantsGreaterThanOrderByNbHabitantsDesc(codeDepartement, min);
-        List<VilleDto> villeDto = villes.stream().map(VilleMapper::toDto).toList();
+        if (populationIndex.isReady()) {
+            return ResponseEntity.ok(populationIndex.findGreaterThan(codeDepartement, min));
+        }
 
-        return ResponseEntity.ok(villeDto);
+        return ResponseEntity.ok(villeRepository.findDtoByDepartement_CodeAndNbHabitantsGreaterThanOrderByNbHabitantsDesc(codeDepartement, min));
     }
 
     /**
@@ -322,13 +478,11 @@ public class VilleService {
             return ResponseEntity.badRequest().body("La valeur minimale ne peut pas être supérieure à la valeur maximale");
         }
 
+        if (populationIndex.isReady()) {
+            return ResponseEntity.ok(populationIndex.findBetween(codeDepartement, min, max));
+        }
 
-        List<Ville> villes = villeRepository.findByDepartement_CodeAndNbHabitantsBetweenOrderByNbHabitantsDesc(codeDepartement, min, max);
-        List<VilleDto> villesDto = villes.stream()
-                .map(VilleMapper::toDto)
-                .toList();
-
-        return ResponseEntity.ok(villesDto);
+        return ResponseEntity.ok(villeRepository.findDtoByDepartement_CodeAndNbHabitantsBetweenOrderByNbHabitantsDesc(codeDepartement, min, max));
     }
 
 
@@ -349,13 +503,11 @@ public class VilleService {
             return ResponseEntity.badRequest().body("Le nombre de villes doit être supérieur à 0");
         }
 
-        PageRequest topN = PageRequest.of(0, n);
-        Page<Ville> villes = villeRepository.findByDepartement_CodeOrderByNbHabitantsDesc(codeDepartement, topN);
-        List<VilleDto> villesDto = villes.getContent().stream()
-                .map(VilleMapper::toDto)
-                .toList();
+        if (populationIndex.isReady()) {
+            return ResponseEntity.ok(populationIndex.findTop(codeDepartement, n));
+        }
 
-        return ResponseEntity.ok(villesDto);
+        return ResponseEntity.ok(villeRepository.findDtoByDepartement_CodeOrderByNbHabitantsDesc(codeDepartement, Limit.of(n)));
     }
 
 
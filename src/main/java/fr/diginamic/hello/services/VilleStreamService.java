@@ -0,0 +1,148 @@
+package fr.diginamic.hello.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.repository.VilleRepository;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes the results of the population queries as NDJSON, one city per line, while
+ * they are read.
+ * <p>
+ * The cities are read lazily from a snapshot of {@link PopulationIndex} once it is
+ * built, otherwise from a forward-only database cursor. Lines go through a fixed-size buffer flushed after the
+ * first city, so the client receives data at once and the memory held by a response
+ * does not depend on the number of cities.
+ */
+@Service
+public class VilleStreamService {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final VilleRepository villeRepository;
+    private final PopulationIndex populationIndex;
+    // Serializes one city per call, leaving the response open and unflushed
+    private final ObjectWriter writer;
+    // Database cursors are read in a read-only transaction held while the response is written
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Constructor to inject the streaming dependencies.
+     *
+     * @param villeRepository    the repository of the cities
+     * @param populationIndex    the in-memory index of the populations
+     * @param objectMapper       the JSON mapper of the application
+     * @param transactionManager the manager of the transactions the cursors are read in
+     */
+    public VilleStreamService(VilleRepository villeRepository, PopulationIndex populationIndex,
+                              ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.villeRepository = villeRepository;
+        this.populationIndex = populationIndex;
+        this.writer = objectMapper.writerFor(VilleDto.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Streams the cities above a population.
+     *
+     * @param min the threshold, exclusive
+     * @return ResponseEntity streaming the cities, most populated first, or an error message
+     */
+    public ResponseEntity<StreamingResponseBody> streamTopNCitiesByPopulation(int min) {
+        if (min <= 0) {
+            return badRequest("Le nombre de villes doit être supérieur à 0");
+        }
+
+        if (populationIndex.isReady()) {
+            return ndjson(out -> write(populationIndex.streamGreaterThan(null, min), out));
+        }
+        return ndjson(out -> writeFromDatabase(
+                () -> villeRepository.streamDtoByNbHabitantsGreaterThanOrderByNbHabitantsDesc(min), out));
+    }
+
+    /**
+     * Streams the cities within a population range.
+     *
+     * @param min the minimum population
+     * @param max the maximum population
+     * @return ResponseEntity streaming the cities, most populated first, or an error message
+     */
+    public ResponseEntity<StreamingResponseBody> streamCitiesByPopulationRange(int min, int max) {
+        if (min < 0 || max < 0) {
+            return badRequest("Les valeurs de population doivent être positives");
+        }
+        if (min > max) {
+            return badRequest("La valeur minimale ne peut pas être supérieure à la valeur maximale");
+        }
+
+        if (populationIndex.isReady()) {
+            return ndjson(out -> write(populationIndex.streamBetween(null, min, max), out));
+        }
+        return ndjson(out -> writeFromDatabase(
+                () -> villeRepository.streamDtoByNbHabitantsBetweenOrderByNbHabitantsDesc(min, max), out));
+    }
+
+    private void writeFromDatabase(Supplier<Stream<VilleDto>> query, OutputStream out) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<VilleDto> villes = query.get()) {
+                write(villes, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Writes cities as NDJSON.
+     *
+     * @param villes the cities
+     * @param out    the body of the response
+     * @throws IOException if the client has gone
+     */
+    void write(Stream<VilleDto> villes, OutputStream out) throws IOException {
+        BufferedOutputStream buffer = new BufferedOutputStream(out, BUFFER_SIZE);
+        Iterator<VilleDto> iterator = villes.iterator();
+        boolean premiere = true;
+        while (iterator.hasNext()) {
+            writer.writeValue(buffer, iterator.next());
+            buffer.write('\n');
+            if (premiere) {
+                buffer.flush();
+                premiere = false;
+            }
+        }
+        buffer.flush();
+    }
+
+    private static ResponseEntity<StreamingResponseBody> ndjson(StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> badRequest(String message) {
+        return ResponseEntity.badRequest()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,391 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.dtos.VilleMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory trigram index of the city names for approximate searches.
+ * <p>
+ * Names are normalized, without accents, in lower case and with every run of
+ * punctuation or spaces turned into a single space, then split into the trigrams of
+ * their words, each word padded with two spaces before and one after. A search counts
+ * the trigrams it shares with every city through the lists of cities of its trigrams,
+ * and ranks the cities by the similarity of the two sets of trigrams, then by population.
+ * <p>
+ * The index is rebuilt when the dataset is reloaded. A city write keeps the slot of the
+ * city, found by id, and copies the lists of the trigrams it touches, readers always
+ * seeing a complete index. A write the index already holds, read by a rebuild that ran
+ * before its event, leaves the index as it is.
+ */
+@Component
+public class VilleTrigramIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VilleTrigramIndex.class);
+    private static final Pattern SEPARATEURS = Pattern.compile("[^a-z0-9]+");
+    // Space, digits and letters: the characters left in a normalized name
+    private static final int ALPHABET = 37;
+    private static final int[] VIDE = new int[0];
+    // Below this similarity a city is not considered a match
+    static final float SIMILARITE_MIN = 0.3f;
+
+    private final VilleDao villeDao;
+    // Loads run in their own read-only transaction, after the change has been committed
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Etat etat = new Etat(new Entree[0], new int[0], new int[ALPHABET * ALPHABET * ALPHABET][]);
+    private volatile boolean ready;
+    // Slot of each city, by id; only read and written under the lock of the writers
+    private Map<Integer, Integer> slots = new HashMap<>();
+
+    public VilleTrigramIndex(VilleDao villeDao, PlatformTransactionManager transactionManager) {
+        this.villeDao = villeDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Rebuilds the index once the dataset has been reloaded.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onRecensementModifie(RecensementModifie event) {
+        List<VilleResume> villes = transactionTemplate.execute(status -> villeDao.getVillesResumees());
+        Entree[] entrees = new Entree[villes.size()];
+        int[] nbTrigrammes = new int[entrees.length];
+        int[] tailles = new int[ALPHABET * ALPHABET * ALPHABET];
+        Map<Integer, Integer> newSlots = new HashMap<>(entrees.length * 2);
+        for (int i = 0; i < entrees.length; i++) {
+            entrees[i] = Entree.of(villes.get(i));
+            newSlots.put(entrees[i].id(), i);
+            nbTrigrammes[i] = entrees[i].trigrammes().length;
+            for (int trigramme : entrees[i].trigrammes()) {
+                tailles[trigramme]++;
+            }
+        }
+
+        // Each list is filled in index order, so it is sorted
+        int[][] listes = new int[tailles.length][];
+        for (int trigramme = 0; trigramme < tailles.length; trigramme++) {
+            listes[trigramme] = tailles[trigramme] == 0 ? null : new int[tailles[trigramme]];
+            tailles[trigramme] = 0;
+        }
+        for (int i = 0; i < entrees.length; i++) {
+            for (int trigramme : entrees[i].trigrammes()) {
+                listes[trigramme][tailles[trigramme]++] = i;
+            }
+        }
+
+        slots = newSlots;
+        etat = new Etat(entrees, nbTrigrammes, listes);
+        ready = true;
+        LOGGER.info("Index des trigrammes des noms de villes construit : {} villes", entrees.length);
+    }
+
+    /**
+     * Replaces the entry of a changed city in its slot. A deleted city leaves its slot
+     * empty until a new city takes it, so the index only grows with the number of cities.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(DatasetVersion.ORDRE_DONNEES)
+    public synchronized void onVilleModifiee(VilleModifiee event) {
+        Etat courant = etat;
+        Integer slot = slots.get(event.id());
+        VilleResume ville = event.apres() == null ? null : transactionTemplate.execute(status -> villeDao.getVilleResumee(event.id()));
+        Entree nouvelle = ville == null ? null : Entree.of(ville);
+        if (slot == null ? nouvelle == null : nouvelle != null && courant.entrees()[slot].isSame(nouvelle)) {
+            return;
+        }
+
+        Entree[] entrees = courant.entrees().clone();
+        int[] nbTrigrammes = courant.tailles().clone();
+        int[][] listes = courant.listes().clone();
+        int index;
+        if (slot != null) {
+            index = slot;
+            for (int trigramme : entrees[index].trigrammes()) {
+                listes[trigramme] = remove(listes[trigramme], index);
+            }
+            entrees[index] = null;
+            nbTrigrammes[index] = 0;
+            slots.remove(event.id());
+        } else {
+            index = slotLibre(entrees);
+        }
+
+        if (nouvelle != null) {
+            if (index == entrees.length) {
+                entrees = Arrays.copyOf(entrees, index + 1);
+                nbTrigrammes = Arrays.copyOf(nbTrigrammes, index + 1);
+            }
+            entrees[index] = nouvelle;
+            nbTrigrammes[index] = nouvelle.trigrammes().length;
+            for (int trigramme : nouvelle.trigrammes()) {
+                listes[trigramme] = insert(listes[trigramme], index);
+            }
+            slots.put(event.id(), index);
+        }
+        etat = new Etat(entrees, nbTrigrammes, listes);
+    }
+
+    /**
+     * @return the number of slots of the index, empty ones included
+     */
+    int size() {
+        return etat.entrees().length;
+    }
+
+    /**
+     * @return whether the index has been built since startup
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Finds the cities whose name is closest to a text, ignoring case, accents and punctuation.
+     *
+     * @param nom   the text searched
+     * @param limit the maximum number of cities returned
+     * @return the matching cities, the most similar first, then the most populated
+     */
+    public List<VilleDto> search(String nom, int limit) {
+        Etat snapshot = etat;
+        int[] trigrammes = trigrammes(normalize(nom));
+        if (trigrammes.length == 0) {
+            return List.of();
+        }
+
+        // A city reaching the minimum similarity shares at least minPartages trigrams with
+        // the search, so it holds one of the rarest length - minPartages + 1 of them: only
+        // their lists give the candidates, the more common ones being checked afterwards
+        int[][] listes = new int[trigrammes.length][];
+        for (int i = 0; i < trigrammes.length; i++) {
+            listes[i] = listeOf(snapshot.listes(), trigrammes[i]);
+        }
+        Arrays.sort(listes, Comparator.comparingInt(liste -> liste.length));
+        int minPartages = Math.max(1, (int) (SIMILARITE_MIN * trigrammes.length));
+        int rares = trigrammes.length - minPartages + 1;
+
+        int[] communs = new int[snapshot.entrees().length];
+        int[] candidates = new int[64];
+        int nbCandidates = 0;
+        for (int i = 0; i < rares; i++) {
+            for (int index : listes[i]) {
+                if (communs[index]++ == 0) {
+                    if (nbCandidates == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, nbCandidates * 2);
+                    }
+                    candidates[nbCandidates++] = index;
+                }
+            }
+        }
+        for (int i = rares; i < listes.length; i++) {
+            int[] liste = listes[i];
+            // Looks the few candidates up in a long list rather than reading it all
+            if ((long) nbCandidates * (32 - Integer.numberOfLeadingZeros(liste.length)) < liste.length) {
+                for (int j = 0; j < nbCandidates; j++) {
+                    if (Arrays.binarySearch(liste, candidates[j]) >= 0) {
+                        communs[candidates[j]]++;
+                    }
+                }
+            } else {
+                for (int index : liste) {
+                    if (communs[index] > 0) {
+                        communs[index]++;
+                    }
+                }
+            }
+        }
+
+        // Keeps the limit best cities, the worst at the head
+        PriorityQueue<Resultat> top = new PriorityQueue<>(Math.min(limit, 64) + 1, Resultat.ORDRE);
+        for (int i = 0; i < nbCandidates; i++) {
+            int index = candidates[i];
+            int partages = communs[index];
+            float similarite = (float) partages / (trigrammes.length + snapshot.tailles()[index] - partages);
+            if (similarite < SIMILARITE_MIN) {
+                continue;
+            }
+            VilleDto ville = snapshot.entrees()[index].ville();
+            if (top.size() == limit && !top.peek().isBelow(similarite, ville)) {
+                continue;
+            }
+            top.add(new Resultat(similarite, ville));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Resultat> resultats = new ArrayList<>(top);
+        resultats.sort(Resultat.ORDRE.reversed());
+        return resultats.stream().map(Resultat::ville).toList();
+    }
+
+    /**
+     * Normalizes a name for the index: accents removed, lower case, and every run of
+     * characters other than letters and digits replaced by a single space.
+     *
+     * @param nom the name
+     * @return the normalized name
+     */
+    static String normalize(String nom) {
+        return SEPARATEURS.matcher(NomsVilles.sansAccents(nom)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Lists the distinct trigrams of a normalized name, each word padded with two spaces
+     * before and one after, so short words and the start of words weigh more.
+     *
+     * @param cle the normalized name
+     * @return the codes of the trigrams, sorted
+     */
+    static int[] trigrammes(String cle) {
+        if (cle.isEmpty()) {
+            return VIDE;
+        }
+        int[] codes = new int[cle.length() * 3];
+        int taille = 0;
+        for (String mot : cle.split(" ")) {
+            String borne = "  " + mot + " ";
+            for (int i = 0; i + 3 <= borne.length(); i++) {
+                codes[taille++] = (code(borne.charAt(i)) * ALPHABET + code(borne.charAt(i + 1))) * ALPHABET
+                        + code(borne.charAt(i + 2));
+            }
+        }
+        return Arrays.stream(codes, 0, taille).sorted().distinct().toArray();
+    }
+
+    private static int code(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 11;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 1;
+        }
+        return 0;
+    }
+
+    private static int[] listeOf(int[][] listes, int trigramme) {
+        int[] liste = listes[trigramme];
+        return liste == null ? VIDE : liste;
+    }
+
+    private static int[] remove(int[] liste, int index) {
+        int position = liste == null ? -1 : Arrays.binarySearch(liste, index);
+        if (position < 0) {
+            return liste;
+        }
+        if (liste.length == 1) {
+            return null;
+        }
+        int[] copie = new int[liste.length - 1];
+        System.arraycopy(liste, 0, copie, 0, position);
+        System.arraycopy(liste, position + 1, copie, position, liste.length - position - 1);
+        return copie;
+    }
+
+    /**
+     * @return the first empty slot of the index, or its length when it is full
+     */
+    private static int slotLibre(Entree[] entrees) {
+        for (int index = 0; index < entrees.length; index++) {
+            if (entrees[index] == null) {
+                return index;
+            }
+        }
+        return entrees.length;
+    }
+
+    private static int[] insert(int[] liste, int index) {
+        if (liste == null) {
+            return new int[]{index};
+        }
+        int position = Arrays.binarySearch(liste, index);
+        if (position >= 0) {
+            return liste;
+        }
+        position = -position - 1;
+        int[] copie = new int[liste.length + 1];
+        System.arraycopy(liste, 0, copie, 0, position);
+        copie[position] = index;
+        System.arraycopy(liste, position, copie, position + 1, liste.length - position);
+        return copie;
+    }
+
+    /**
+     * The entries of the index, their number of trigrams, read by searches without
+     * loading the entries, and, for every trigram, the sorted indexes of the entries
+     * holding it. Slots left by removed cities are null until a new city takes them.
+     */
+    private record Etat(Entree[] entrees, int[] tailles, int[][] listes) {
+    }
+
+    /**
+     * A city of the index.
+     *
+     * @param id         the ID of the city
+     * @param trigrammes the trigrams of the normalized name of the city
+     * @param ville      the city returned by searches
+     */
+    private record Entree(int id, int[] trigrammes, VilleDto ville) {
+
+        private static Entree of(VilleResume ville) {
+            return new Entree(ville.id(), VilleTrigramIndex.trigrammes(normalize(ville.nom())), VilleMapper.toDto(ville));
+        }
+
+        /**
+         * @return whether an entry holds the same city, with the same name and columns
+         */
+        private boolean isSame(Entree autre) {
+            return id == autre.id
+                    && Arrays.equals(trigrammes, autre.trigrammes)
+                    && Objects.equals(ville.getCodeVille(), autre.ville.getCodeVille())
+                    && Objects.equals(ville.getNom(), autre.ville.getNom())
+                    && ville.getNbHabitants() == autre.ville.getNbHabitants()
+                    && Objects.equals(ville.getCodeDepartement(), autre.ville.getCodeDepartement())
+                    && Objects.equals(ville.getNomDepartement(), autre.ville.getNomDepartement());
+        }
+    }
+
+    /**
+     * A city matched by a search.
+     *
+     * @param similarite the share of trigrams common to the search and the name of the city
+     * @param ville      the city
+     */
+    private record Resultat(float similarite, VilleDto ville) {
+
+        // Least similar first, then least populated
+        private static final Comparator<Resultat> ORDRE = Comparator.comparingDouble(Resultat::similarite)
+                .thenComparingInt(resultat -> resultat.ville().getNbHabitants());
+
+        /**
+         * @return whether this result ranks below a city, without creating its result
+         */
+        private boolean isBelow(float similarite, VilleDto ville) {
+            return this.similarite < similarite
+                    || (this.similarite == similarite && this.ville.getNbHabitants() < ville.getNbHabitants());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package fr.diginamic.hello;
+
+import fr.diginamic.hello.services.CsvImportService;
+import fr.diginamic.hello.services.ImportStatus;
+import fr.diginamic.hello.services.LigneRecensement;
+import fr.diginamic.hello.services.RecensementSnapshot;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Compares the import of the census from its binary snapshot, the new cities being
+ * inserted with plain JDBC batches or persisted through JPA.
+ * <p>
+ * Each mode starts the application over a new in-memory H2 database. Once the startup
+ * import is over, the tables are emptied and a snapshot of synthetic cities is imported,
+ * several times; the duration of each import is printed.
+ * <p>
+ * Run from the project root with the test classpath, e.g. from the IDE, through {@link #main}:
+ * {@code [cities] [runs per mode]}, 200000 cities and 3 runs by default.
+ */
+public class SnapshotImportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int villes = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        Path dir = Files.createTempDirectory("benchmark");
+
+        for (String inserts : new String[]{"jpa", "jdbc"}) {
+            Path snapshot = dir.resolve("recensement-" + inserts + ".snapshot");
+            try (ConfigurableApplicationContext context = start(inserts, snapshot)) {
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+                for (int run = 1; run <= runs; run++) {
+                    // A new file each run, so that the import is not skipped as already done
+                    Path csv = Files.writeString(dir.resolve("recensement-" + run + ".csv"), "run " + run, StandardCharsets.UTF_8);
+                    writeSnapshot(snapshot, checksum(csv), villes);
+                    jdbcTemplate.execute("DELETE FROM ville");
+                    jdbcTemplate.execute("DELETE FROM departement");
+                    jdbcTemplate.execute("DELETE FROM import_recensement");
+
+                    long debut = System.nanoTime();
+                    context.getBean(CsvImportService.class).importData(csv.toString());
+                    System.out.printf("snapshot, insertions %-4s : %,d villes en %,d ms%n", inserts, villes,
+                            (System.nanoTime() - debut) / 1_000_000);
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String inserts, Path snapshot) throws InterruptedException {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(HelloApplication.class)
+                // Arguments rather than default properties, which application.properties overrides
+                .run(
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:snapshot-" + inserts + ";DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.fr.diginamic=warn",
+                        "--recensement.snapshot.path=" + snapshot,
+                        "--recensement.snapshot.inserts=" + inserts);
+        ImportStatus importStatus = context.getBean(ImportStatus.class);
+        while (!importStatus.isReady()) {
+            if (importStatus.getEtat() == ImportStatus.Etat.ECHEC) {
+                throw new IllegalStateException("Échec de l'import", importStatus.getErreur());
+            }
+            Thread.sleep(10);
+        }
+        return context;
+    }
+
+    private static void writeSnapshot(Path snapshot, String checksum, int villes) throws IOException {
+        try (RecensementSnapshot.Writer writer = RecensementSnapshot.create(snapshot, checksum)) {
+            for (int i = 0; i < villes; i++) {
+                String departement = String.format("%02d", i % 100);
+                int nbHabitants = 1_000 + i % 50_000;
+                writer.write(new LigneRecensement("76", "Occitanie", departement, "1", "01",
+                        String.format("%06d", i), "Ville " + i, nbHabitants, nbHabitants));
+            }
+            writer.commit();
+        }
+    }
+
+    private static String checksum(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,220 @@
+package fr.diginamic.hello;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.diginamic.hello.services.ImportStatus;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the request handling on the Tomcat platform thread pool with the handling on
+ * virtual threads, under a load mixing requests blocked on JDBC and requests answered
+ * from the in-memory indexes.
+ * <p>
+ * Each mode starts the application on a random port, over an in-memory H2 database
+ * loaded by the startup import, and with a fixed latency added to every query so that the
+ * database behaves like a remote one. Half of the clients read the cities of a
+ * departement, a query holding a connection of the pool, the other half run fuzzy
+ * searches on the names, which do not touch the database. The throughput and the
+ * latencies of both kinds of requests are printed for each mode.
+ * <p>
+ * Run from the project root with the test classpath, e.g. from the IDE, through {@link #main}:
+ * {@code [clients] [seconds] [query latency in ms]}, 1000 clients for 20 seconds with 5 ms by default.
+ */
+public class VilleLoadBenchmark {
+
+    private static final String[] NOMS = {"montpelier", "st etienne", "marseile", "abergement clemenciat", "la roche sur yon"};
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Duration duree = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 20);
+        long latence = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        for (boolean virtual : new boolean[]{false, true}) {
+            try (ConfigurableApplicationContext context = start(virtual, latence)) {
+                int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                run(virtual ? "threads virtuels" : "pool de threads Tomcat", URI.create("http://localhost:" + port), clients, duree);
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(boolean virtual, long latence) throws InterruptedException {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(HelloApplication.class, LatenceJdbc.class)
+                // Arguments rather than default properties, which application.properties overrides
+                .run(
+                        "--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtual,
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark-" + virtual + ";DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--recensement.snapshot.path=",
+                        "--benchmark.latence-ms=" + latence);
+        ImportStatus importStatus = context.getBean(ImportStatus.class);
+        while (!importStatus.isReady()) {
+            if (importStatus.getEtat() == ImportStatus.Etat.ECHEC) {
+                throw new IllegalStateException("Échec de l'import", importStatus.getErreur());
+            }
+            Thread.sleep(200);
+        }
+        return context;
+    }
+
+    private static void run(String mode, URI base, int clients, Duration duree) throws Exception {
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        List<String> departements = new ArrayList<>();
+        JsonNode body = new ObjectMapper().readTree(http.send(HttpRequest.newBuilder(base.resolve("/departements")).build(),
+                HttpResponse.BodyHandlers.ofString()).body());
+        body.forEach(departement -> departements.add(departement.get("code").asText()));
+
+        // Warm-up, then measure
+        load(http, base, departements, clients, Duration.ofSeconds(5), new Latences[]{new Latences(), new Latences()});
+        Latences[] latences = {new Latences(), new Latences()};
+        load(http, base, departements, clients, duree, latences);
+
+        System.out.printf("%n%s, %d clients, %d s%n", mode, clients, duree.toSeconds());
+        latences[0].print("JDBC", duree);
+        latences[1].print("index", duree);
+    }
+
+    /**
+     * Runs the clients until the end of the duration, each one sending its requests one
+     * after another.
+     */
+    private static void load(HttpClient http, URI base, List<String> departements, int clients, Duration duree,
+                             Latences[] latences) throws InterruptedException {
+        long fin = System.nanoTime() + duree.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < clients; client++) {
+                boolean jdbc = client % 2 == 0;
+                Latences mesures = latences[jdbc ? 0 : 1];
+                executor.execute(() -> {
+                    while (System.nanoTime() < fin) {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        String path = jdbc
+                                ? "/departements/" + departements.get(random.nextInt(departements.size())) + "/villes?size=20"
+                                : "/villes/search/fuzzy?nom=" + NOMS[random.nextInt(NOMS.length)].replace(" ", "+");
+                        HttpRequest request = HttpRequest.newBuilder(base.resolve(path)).timeout(Duration.ofMinutes(1)).build();
+                        long debut = System.nanoTime();
+                        try {
+                            int statut = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                            mesures.add(System.nanoTime() - debut, statut == 200);
+                        } catch (Exception e) {
+                            mesures.add(System.nanoTime() - debut, false);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * The latencies of the requests of one kind.
+     */
+    private static final class Latences {
+
+        private final Queue<Long> durees = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger erreurs = new AtomicInteger();
+
+        void add(long duree, boolean succes) {
+            durees.add(duree);
+            if (!succes) {
+                erreurs.incrementAndGet();
+            }
+        }
+
+        void print(String type, Duration duree) {
+            List<Long> triees = durees.stream().sorted().toList();
+            System.out.printf("  %-6s %8.0f req/s   p50 %7.1f ms   p99 %7.1f ms   max %7.1f ms   erreurs %d%n",
+                    type, triees.size() / (double) duree.toSeconds(), percentile(triees, 0.50), percentile(triees, 0.99),
+                    percentile(triees, 1.0), erreurs.get());
+        }
+
+        private static double percentile(List<Long> triees, double rang) {
+            if (triees.isEmpty()) {
+                return 0;
+            }
+            int index = (int) Math.ceil(rang * triees.size()) - 1;
+            return triees.get(Math.max(index, 0)) / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Adds the latency of a remote database to every query, while its connection is held.
+     */
+    @Configuration
+    static class LatenceJdbc {
+
+        @Bean
+        static BeanPostProcessor latenceDataSource(org.springframework.core.env.Environment environment) {
+            long latence = environment.getProperty("benchmark.latence-ms", Long.class, 0L);
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource && latence > 0) {
+                        return proxy(DataSource.class, dataSource, (target, method, args) ->
+                                method.getName().equals("getConnection")
+                                        ? proxy(Connection.class, (Connection) method.invoke(target, args), statements(latence))
+                                        : method.invoke(target, args));
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static Handler statements(long latence) {
+            return (target, method, args) -> method.getName().equals("prepareStatement")
+                    ? proxy(PreparedStatement.class, (PreparedStatement) method.invoke(target, args), (statement, execute, arguments) -> {
+                        if (execute.getName().equals("executeQuery")) {
+                            TimeUnit.MILLISECONDS.sleep(latence);
+                        }
+                        return execute.invoke(statement, arguments);
+                    })
+                    : method.invoke(target, args);
+        }
+
+        private static <T> T proxy(Class<T> type, T target, Handler handler) {
+            InvocationHandler invocationHandler = (proxy, method, args) -> {
+                try {
+                    return handler.invoke(target, method, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            };
+            return type.cast(Proxy.newProxyInstance(VilleLoadBenchmark.class.getClassLoader(), new Class<?>[]{type}, invocationHandler));
+        }
+
+        private interface Handler {
+            Object invoke(Object target, Method method, Object[] args) throws Throwable;
+        }
+    }
+}
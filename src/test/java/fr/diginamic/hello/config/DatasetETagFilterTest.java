@@ -0,0 +1,90 @@
+package fr.diginamic.hello.config;
+
+import fr.diginamic.hello.services.CsvImportService;
+import fr.diginamic.hello.services.DatasetVersion;
+import fr.diginamic.hello.services.ImportStatus;
+import fr.diginamic.hello.services.RecensementModifie;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DatasetETagFilterTest {
+
+    private final DatasetVersion datasetVersion = new DatasetVersion();
+    private final ImportStatus importStatus = new ImportStatus();
+    private final CsvImportService csvImportService = mock(CsvImportService.class);
+    private final DatasetETagFilter filter = new DatasetETagFilter(datasetVersion, importStatus, csvImportService);
+
+    @Test
+    void answersNotModifiedUntilTheDatasetChanges() throws Exception {
+        importStatus.complete();
+        MockHttpServletResponse response = get(null, 200);
+        String etag = response.getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        response = get(etag, 200);
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getContentAsString());
+
+        datasetVersion.onRecensementModifie(new RecensementModifie());
+        response = get(etag, 200);
+        assertEquals(200, response.getStatus());
+        assertEquals("[]", response.getContentAsString());
+    }
+
+    @Test
+    void doesNotTagPartialData() throws Exception {
+        importStatus.start();
+        MockHttpServletResponse response = get("*", 200);
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void doesNotTagWhileAnUploadIsImported() throws Exception {
+        importStatus.complete();
+        when(csvImportService.isImportRunning()).thenReturn(true);
+        MockHttpServletResponse response = get("*", 200);
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void doesNotTagErrors() throws Exception {
+        importStatus.complete();
+        assertNull(get(null, 404).getHeader(HttpHeaders.ETAG));
+        assertNull(get(null, 503).getHeader(HttpHeaders.ETAG));
+    }
+
+    /**
+     * Sends a GET request through the filter to a handler answering an empty JSON array.
+     */
+    private MockHttpServletResponse get(String ifNoneMatch, int status) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/villes/top/min");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                resp.setStatus(status);
+                resp.getWriter().write("[]");
+            }
+        }));
+        return response;
+    }
+}
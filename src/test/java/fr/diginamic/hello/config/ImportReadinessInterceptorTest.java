@@ -0,0 +1,54 @@
+package fr.diginamic.hello.config;
+
+import fr.diginamic.hello.services.ImportStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImportReadinessInterceptorTest {
+
+    private final ImportStatus importStatus = new ImportStatus();
+
+    @Test
+    void asksToRetryWhileTheImportRuns() throws Exception {
+        importStatus.start();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertFalse(interceptor("unavailable").preHandle(get(), response, new Object()));
+        assertEquals(503, response.getStatus());
+        assertEquals("10", response.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void refusesReadsWithoutRetryOnceTheImportHasFailed() throws Exception {
+        importStatus.start();
+        importStatus.fail(new IllegalStateException("Fichier du recensement illisible"));
+
+        for (String mode : new String[]{"partial", "unavailable"}) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            assertFalse(interceptor(mode).preHandle(get(), response, new Object()));
+            assertEquals(503, response.getStatus());
+            assertNull(response.getHeader(HttpHeaders.RETRY_AFTER));
+            assertTrue(response.getContentAsString().contains("a échoué"));
+        }
+
+        importStatus.recover();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertTrue(interceptor("unavailable").preHandle(get(), response, new Object()));
+        assertEquals(200, response.getStatus());
+    }
+
+    private ImportReadinessInterceptor interceptor(String mode) {
+        return new ImportReadinessInterceptor(importStatus, mode, 10);
+    }
+
+    private static MockHttpServletRequest get() {
+        return new MockHttpServletRequest("GET", "/villes/top/min");
+    }
+}
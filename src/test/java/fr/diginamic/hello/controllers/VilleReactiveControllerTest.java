@@ -0,0 +1,100 @@
+package fr.diginamic.hello.controllers;
+
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.services.CsvImportService;
+import fr.diginamic.hello.services.DatasetVersion;
+import fr.diginamic.hello.services.ImportStatus;
+import fr.diginamic.hello.services.VilleReactiveService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(VilleReactiveController.class)
+class VilleReactiveControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private VilleReactiveService villeReactiveService;
+
+    // Needed by the interceptor and the filter of the read endpoints
+    @MockitoBean
+    private ImportStatus importStatus;
+
+    @MockitoBean
+    private DatasetVersion datasetVersion;
+
+    @MockitoBean
+    private CsvImportService csvImportService;
+
+    @Test
+    void streamsOneCityPerLine() throws Exception {
+        when(importStatus.isReady()).thenReturn(true);
+        when(villeReactiveService.findGreaterThan("34", 50_000)).thenReturn(Flux.just(
+                new VilleDto("34172", "Montpellier", 302_454, "34", "Hérault"),
+                new VilleDto("34032", "Béziers", 79_041, "34", "Hérault")));
+
+        MvcResult result = mockMvc.perform(get("/reactive/villes/top/min")
+                        .param("min", "50000")
+                        .param("codeDepartement", "34")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertEquals("""
+                        {"codeVille":"34172","nom":"Montpellier","nbHabitants":302454,"codeDepartement":"34","nomDepartement":"Hérault"}
+                        {"codeVille":"34032","nom":"Béziers","nbHabitants":79041,"codeDepartement":"34","nomDepartement":"Hérault"}
+                        """, body);
+    }
+
+    @Test
+    void answersInvalidParametersWithBadRequest() throws Exception {
+        when(villeReactiveService.findTop("34", 0)).thenReturn(Flux.error(
+                new ResponseStatusException(HttpStatus.BAD_REQUEST, "Le nombre de villes doit être supérieur à 0")));
+
+        MvcResult result = mockMvc.perform(get("/reactive/villes/top/departement/n")
+                        .param("codeDepartement", "34")
+                        .param("n", "0")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void answersFuzzySearchesWithServiceUnavailableUntilTheIndexIsBuilt() throws Exception {
+        when(villeReactiveService.searchLike("montpelier", 10)).thenReturn(Flux.error(
+                new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Index des noms en construction")));
+
+        MvcResult result = mockMvc.perform(get("/reactive/villes/search/fuzzy")
+                        .param("nom", "montpelier")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable());
+    }
+}
@@ -0,0 +1,95 @@
+package fr.diginamic.hello.repository;
+
+import fr.diginamic.hello.dtos.DepartementDto;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.dtos.VilleMapper;
+import fr.diginamic.hello.entity.Departement;
+import fr.diginamic.hello.entity.Ville;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class VilleRepositoryTest {
+
+    @Autowired
+    private VilleRepository villeRepository;
+
+    @Autowired
+    private DepartementRepository departementRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        Departement herault = entityManager.persist(new Departement("34", "Hérault", 1_200_000));
+        Departement gard = entityManager.persist(new Departement("30", "Gard", 750_000));
+        entityManager.persist(new Ville("172", "Montpellier", 302_454, herault));
+        entityManager.persist(new Ville("032", "Béziers", 79_041, herault));
+        entityManager.persist(new Ville("189", "Nîmes", 151_001, gard));
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void projectionsRunOneStatementWithoutLoadingEntities() {
+        List<VilleDto> villes = villeRepository.findDtoByNbHabitantsGreaterThanOrderByNbHabitantsDesc(100_000);
+        assertEquals(List.of("Montpellier", "Nîmes"), villes.stream().map(VilleDto::getNom).toList());
+        assertEquals("Gard", villes.get(1).getNomDepartement());
+        assertStatements(1);
+
+        villes = villeRepository.findDtoByDepartement_CodeOrderByNbHabitantsDesc("34", PageRequest.of(0, 10)).getContent();
+        assertEquals(List.of("Montpellier", "Béziers"), villes.stream().map(VilleDto::getNom).toList());
+        assertStatements(1);
+
+        villes = villeRepository.findDtoByNomStartingWithIgnoreCase("b");
+        assertEquals("Béziers", villes.getFirst().getNom());
+        assertStatements(1);
+    }
+
+    @Test
+    void mappingEntitiesLoadsTheDepartementsSeparately() {
+        // Baseline the projections are compared to: the cities are hydrated, then each
+        // departement is loaded by its own statement when the city is mapped
+        villeRepository.findByNbHabitantsGreaterThanOrderByNbHabitantsDesc(0).stream()
+                .map(VilleMapper::toDto)
+                .toList();
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(5, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void departementSummariesDoNotLoadTheCities() {
+        List<DepartementDto> departements = departementRepository.findAllDto();
+        assertEquals(List.of("30", "34"), departements.stream().map(DepartementDto::getCode).toList());
+        assertStatements(1);
+    }
+
+    private void assertStatements(long expected) {
+        assertEquals(expected, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        statistics.clear();
+    }
+}
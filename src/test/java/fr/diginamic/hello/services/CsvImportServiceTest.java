@@ -0,0 +1,231 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.DepartementDao;
+import fr.diginamic.hello.daos.ImportRecensementDao;
+import fr.diginamic.hello.daos.RegionDao;
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.entity.Departement;
+import fr.diginamic.hello.entity.Ville;
+import fr.diginamic.hello.repository.DepartementRepository;
+import fr.diginamic.hello.repository.VilleRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import({VilleDao.class, DepartementDao.class, RegionDao.class, ImportRecensementDao.class})
+class CsvImportServiceTest {
+
+    private static final String ENTETE = "Code région;Nom de la région;Code département;Code arrondissement;Code canton;"
+            + "Code commune;Nom de la commune;Population municipale;Population comptée à part;Population totale;\n";
+
+    @Autowired
+    private VilleDao villeDao;
+
+    @Autowired
+    private DepartementDao departementDao;
+
+    @Autowired
+    private RegionDao regionDao;
+
+    @Autowired
+    private ImportRecensementDao importRecensementDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private VilleRepository villeRepository;
+
+    @Autowired
+    private DepartementRepository departementRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @TempDir
+    private Path dir;
+
+    private final ImportMonitor importMonitor = new ImportMonitor(10);
+
+    @Test
+    void insertsTheCitiesOfTheSnapshotWithJdbcBatches() throws IOException {
+        Path csv = csv("76;Occitanie;34;3;99;34172;Montpellier;302454;0;302454;\n");
+        Path snapshot = dir.resolve("recensement.snapshot");
+        try (RecensementSnapshot.Writer writer = RecensementSnapshot.create(snapshot, CsvImportService.checksum(csv))) {
+            writer.write(new LigneRecensement("76", "Occitanie", "34", "3", "99", "34172", "Montpellier", 302_454, 302_454));
+            writer.write(new LigneRecensement("76", "Occitanie", "34", "2", "10", "34032", "Béziers", 79_041, 79_041));
+            writer.write(new LigneRecensement("76", "Occitanie", "30", "1", "01", "30189", "Nîmes", 151_001, 151_001));
+            writer.commit();
+        }
+
+        // Batches of 2 cities: the ids of several batches come from the same block of the sequence
+        newService(2, snapshot).importData(csv.toString());
+        villeRepository.save(new Ville("30007", "Alès", 42_000, departementRepository.findByCode("30")));
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(3, importMonitor.getCurrent().getLignesLues());
+        assertEquals(3, importMonitor.getCurrent().getLignesEnregistrees());
+        List<Ville> villes = villeRepository.findAll();
+        assertEquals(4, villes.size());
+        assertEquals(4, villes.stream().map(Ville::getId).distinct().count());
+        Ville beziers = villes.stream().filter(ville -> ville.getCodeVille().equals("34032")).findFirst().orElseThrow();
+        assertEquals("Béziers", beziers.getNom());
+        assertEquals(79_041, beziers.getNbHabitants());
+        assertEquals("10", beziers.getCodeCanton());
+        assertEquals(302_454 + 79_041, nbHabitants("34"));
+    }
+
+    @Test
+    void importsTheCsvInsteadOfACorruptedSnapshot() throws IOException {
+        Path csv = csv("""
+                76;Occitanie;34;3;99;34172;Montpellier;302454;0;302454;
+                76;Occitanie;34;2;10;34032;Béziers;79041;0;79041;
+                """);
+        Path snapshot = dir.resolve("recensement.snapshot");
+        try (RecensementSnapshot.Writer writer = RecensementSnapshot.create(snapshot, CsvImportService.checksum(csv))) {
+            writer.write(new LigneRecensement("76", "Occitanie", "34", "3", "99", "34172", "Montpellier", 302_454, 302_454));
+            writer.write(new LigneRecensement("76", "Occitanie", "34", "2", "10", "34032", "Béziers", 79_041, 79_041));
+            writer.commit();
+        }
+        // One byte of the first city name flipped, in the first block handed to the import
+        byte[] bytes = Files.readAllBytes(snapshot);
+        int nom = indexOf(bytes, "Montpellier".getBytes(StandardCharsets.UTF_8));
+        bytes[nom + 1] ^= 0x01;
+        Files.write(snapshot, bytes);
+
+        newService(1, snapshot).importData(csv.toString());
+        entityManager.clear();
+
+        assertEquals(2, villeRepository.count());
+        assertEquals("Montpellier", ville("34172").getNom());
+        assertEquals(79_041, ville("34032").getNbHabitants());
+        assertEquals(302_454 + 79_041, nbHabitants("34"));
+        // The snapshot is written again from the CSV
+        assertEquals(CsvImportService.checksum(csv), RecensementSnapshot.readChecksum(snapshot));
+        RecensementSnapshot.read(snapshot, 10, lignes -> assertEquals("Montpellier", lignes.get(0).nom()));
+    }
+
+    @Test
+    void appliesAChangedFileAsADelta() throws IOException {
+        CsvImportService service = newService(500, null);
+        service.importData(csv("""
+                76;Occitanie;34;3;99;34172;Montpellier;302454;0;302454;
+                76;Occitanie;34;2;10;34032;Béziers;79041;0;79041;
+                76;Occitanie;48;1;05;48095;Mende;12000;0;12000;
+                76;Occitanie;30;1;01;30189;Nîmes;151001;0;151001;
+                """).toString());
+        entityManager.clear();
+        Integer montpellier = ville("34172").getId();
+        Integer beziers = ville("34032").getId();
+
+        // Unchanged, changed, removed and added lines; Lozère loses its only city
+        service.importData(csv("""
+                76;Occitanie;34;3;99;34172;Montpellier;302454;0;302454;
+                76;Occitanie;34;2;10;34032;Béziers;80000;0;80000;
+                76;Occitanie;30;1;01;30189;Nîmes;151001;0;151001;
+                76;Occitanie;30;1;02;30007;Alès;42000;0;42000;
+                """).toString());
+        entityManager.clear();
+
+        assertEquals(montpellier, ville("34172").getId());
+        assertEquals(302_454, ville("34172").getNbHabitants());
+        assertEquals(beziers, ville("34032").getId());
+        assertEquals(80_000, ville("34032").getNbHabitants());
+        assertEquals(42_000, ville("30007").getNbHabitants());
+        assertNull(ville("48095"));
+        assertEquals(4, villeRepository.count());
+        assertEquals(302_454 + 80_000, nbHabitants("34"));
+        assertEquals(151_001 + 42_000, nbHabitants("30"));
+        assertEquals(0, nbHabitants("48"));
+    }
+
+    @Test
+    void addsTheChangesOfTheFileToTheTotalsInsteadOfOverwritingThem() throws IOException {
+        CsvImportService service = newService(500, null);
+        service.importData(csv("""
+                76;Occitanie;34;3;99;34172;Montpellier;302454;0;302454;
+                76;Occitanie;34;2;10;34032;Béziers;79041;0;79041;
+                """).toString());
+        // A write of VilleService committed while the next import runs
+        departementRepository.addNbHabitants("34", 1_000);
+        entityManager.clear();
+
+        service.importData(csv("""
+                76;Occitanie;34;3;99;34172;Montpellier;310000;0;310000;
+                76;Occitanie;30;1;01;30189;Nîmes;151001;0;151001;
+                """).toString());
+        entityManager.clear();
+
+        assertEquals(310_000 + 1_000, nbHabitants("34"));
+        assertEquals(151_001, nbHabitants("30"));
+    }
+
+    @Test
+    void comparesTheFileWithTheLastImportUnderTheImportLock() throws IOException {
+        CsvImportService service = newService(500, null);
+        Path csv = csv("76;Occitanie;34;3;99;34172;Montpellier;302454;0;302454;\n");
+        service.importData(csv.toString());
+
+        // Even an unchanged file waits for the running import before being compared
+        service.startImport();
+        assertThrows(IllegalStateException.class, () -> service.importData(csv.toString()));
+        service.cancelImport();
+
+        service.importData(csv.toString());
+        assertFalse(service.isImportRunning());
+        assertEquals(1, villeRepository.count());
+    }
+
+    private static int indexOf(byte[] bytes, byte[] motif) {
+        for (int i = 0; i <= bytes.length - motif.length; i++) {
+            if (Arrays.equals(bytes, i, i + motif.length, motif, 0, motif.length)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Motif absent");
+    }
+
+    private Ville ville(String codeVille) {
+        return villeRepository.findAll().stream()
+                .filter(ville -> ville.getCodeVille().equals(codeVille))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private CsvImportService newService(int batchSize, Path snapshot) {
+        return new CsvImportService(villeDao, departementDao, departementRepository, regionDao, importRecensementDao,
+                importMonitor, mock(ApplicationEventPublisher.class), transactionManager, batchSize, 1000, "sequential", true,
+                snapshot == null ? "" : snapshot.toString(), "jdbc");
+    }
+
+    private Path csv(String lignes) throws IOException {
+        Path csv = Files.createTempFile(dir, "recensement", ".csv");
+        Files.writeString(csv, ENTETE + lignes, StandardCharsets.UTF_8);
+        return csv;
+    }
+
+    private int nbHabitants(String codeDepartement) {
+        Departement departement = departementRepository.findByCode(codeDepartement);
+        return departement.getNombreHabitants();
+    }
+}
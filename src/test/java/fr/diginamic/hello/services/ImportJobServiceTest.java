@@ -0,0 +1,106 @@
+package fr.diginamic.hello.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImportJobServiceTest {
+
+    private static final String CSV = "34;Hérault;34172;Montpellier;302454\n";
+
+    private final CsvImportService csvImportService = mock(CsvImportService.class);
+    private final ImportStatus importStatus = new ImportStatus();
+    private final ImportJobService service = new ImportJobService(csvImportService, importStatus, Duration.ofHours(1), 2);
+
+    @Test
+    void registersTheJobBeforeItsContentIsRead() {
+        when(csvImportService.startImport()).thenReturn(new ImportProgress(10));
+        AtomicReference<String> contenu = new AtomicReference<>();
+        doAnswer(invocation -> {
+            contenu.set(new String(invocation.<InputStream>getArgument(0).readAllBytes(), StandardCharsets.UTF_8));
+            return null;
+        }).when(csvImportService).importData(any(InputStream.class), any(ImportProgress.class));
+
+        ImportJob job = service.start();
+        assertEquals(ImportStatus.Etat.EN_COURS, job.getEtat());
+        assertSame(job, service.getJob(job.getId()));
+
+        service.run(job, new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(ImportStatus.Etat.TERMINE, job.getEtat());
+        assertEquals(CSV, contenu.get());
+    }
+
+    @Test
+    void aSuccessfulUploadReplacesAFailedStartupImport() {
+        importStatus.fail(new IllegalStateException("Fichier du recensement illisible"));
+        when(csvImportService.startImport()).thenReturn(new ImportProgress(10));
+
+        ImportJob job = service.start();
+        service.run(job, new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(ImportStatus.Etat.TERMINE, job.getEtat());
+        assertTrue(importStatus.isReady());
+    }
+
+    @Test
+    void rejectsAnUploadWhileAnImportRuns() {
+        when(csvImportService.startImport()).thenThrow(new IllegalStateException("Un import du recensement est déjà en cours"));
+
+        assertThrows(IllegalStateException.class, service::start);
+        assertTrue(service.getJobs().isEmpty());
+    }
+
+    @Test
+    void releasesTheLockOfAContentThatCannotBeRead() {
+        when(csvImportService.startImport()).thenReturn(new ImportProgress(10));
+
+        ImportJob job = service.start();
+        service.abort(job, new IOException("Connexion interrompue"));
+
+        assertEquals(ImportStatus.Etat.ECHEC, job.getEtat());
+        verify(csvImportService).cancelImport();
+        verify(csvImportService, never()).importData(any(InputStream.class), any(ImportProgress.class));
+    }
+
+    @Test
+    void evictsTheOldestFinishedJobs() throws InterruptedException {
+        when(csvImportService.startImport()).thenReturn(new ImportProgress(10));
+        ImportJob premier = service.start();
+        service.run(premier, InputStream.nullInputStream());
+        TimeUnit.MILLISECONDS.sleep(5);
+        ImportJob deuxieme = service.start();
+        service.run(deuxieme, InputStream.nullInputStream());
+        ImportJob troisieme = service.start();
+        service.run(troisieme, InputStream.nullInputStream());
+        ImportJob enCours = service.start();
+
+        // Two finished jobs are kept, the running one never evicted
+        assertNull(service.getJob(premier.getId()));
+        assertEquals(3, service.getJobs().size());
+        assertSame(enCours, service.getJob(enCours.getId()));
+
+        ImportJobService sansRetention = new ImportJobService(csvImportService, importStatus, Duration.ZERO, 100);
+        ImportJob job = sansRetention.start();
+        sansRetention.run(job, InputStream.nullInputStream());
+        TimeUnit.MILLISECONDS.sleep(5);
+        assertNull(sansRetention.getJob(job.getId()));
+    }
+}
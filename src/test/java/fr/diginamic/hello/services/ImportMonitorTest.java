@@ -0,0 +1,25 @@
+package fr.diginamic.hello.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ImportMonitorTest {
+
+    @Test
+    void gaugesReadTheCurrentRun() {
+        ImportMonitor monitor = new ImportMonitor(10);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        monitor.bindTo(registry);
+        assertEquals(0, registry.get("recensement.import.lignes.lues").gauge().value());
+
+        ImportProgress progress = monitor.startRun();
+        progress.addLignesLues(42);
+        progress.rejet(RejetLigne.CODE_DUPLIQUE, "34;34172;Montpellier");
+
+        assertEquals(42, registry.get("recensement.import.lignes.lues").gauge().value());
+        assertEquals(1, registry.get("recensement.import.lignes.rejetees")
+                .tag("raison", RejetLigne.CODE_DUPLIQUE.name()).gauge().value());
+    }
+}
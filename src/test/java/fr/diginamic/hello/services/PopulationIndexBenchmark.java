@@ -0,0 +1,101 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.dtos.VilleMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the population index with the work done by the repository methods it replaces:
+ * filtering the whole table, sorting by population and mapping every row. The repository
+ * side runs on an in-memory copy of the census, so it excludes the database round trip
+ * and is a lower bound of the cost of the SQL queries.
+ * <p>
+ * Run from the project root with the test classpath, e.g. from the IDE, through {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PopulationIndexBenchmark {
+
+    private static final Comparator<VilleResume> PAR_POPULATION = Comparator.comparingInt(VilleResume::nbHabitants).reversed();
+
+    private List<VilleResume> villes;
+    private PopulationIndex index;
+
+    @Setup
+    public void loadVilles() throws IOException {
+        List<LigneRecensement> lignes = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Path.of("src/main/resources/data/recensement.csv"), StandardCharsets.UTF_8)) {
+            RecensementCsvParser.parse(reader, 1000, new ImportProgress(0), lignes::addAll);
+        }
+
+        villes = new ArrayList<>(lignes.size());
+        for (LigneRecensement ligne : lignes) {
+            villes.add(new VilleResume(villes.size() + 1, ligne.codeVille(), ligne.nom(), ligne.nbHabitants(),
+                    ligne.codeDepartement(), "Departement " + ligne.codeDepartement()));
+        }
+        index = new PopulationIndex(null, null, 100);
+        index.load(villes);
+    }
+
+    @Benchmark
+    public List<VilleDto> repositoryBetween() {
+        return villes.stream()
+                .filter(ville -> ville.nbHabitants() >= 10_000 && ville.nbHabitants() <= 50_000)
+                .sorted(PAR_POPULATION)
+                .map(VilleMapper::toDto)
+                .toList();
+    }
+
+    @Benchmark
+    public List<VilleDto> indexBetween() {
+        return index.findBetween(null, 10_000, 50_000);
+    }
+
+    @Benchmark
+    public List<VilleDto> repositoryTopOfDepartement() {
+        return villes.stream()
+                .filter(ville -> ville.codeDepartement().equals("69"))
+                .sorted(PAR_POPULATION)
+                .limit(10)
+                .map(VilleMapper::toDto)
+                .toList();
+    }
+
+    @Benchmark
+    public List<VilleDto> indexTopOfDepartement() {
+        return index.findTop("69", 10);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PopulationIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,142 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.VilleDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PopulationIndexTest {
+
+    private final VilleDao villeDao = mock(VilleDao.class);
+    private final PopulationIndex index = new PopulationIndex(villeDao, mock(PlatformTransactionManager.class), 2);
+
+    @Test
+    void leaderboardsFollowTheChangesOfTheirCities() {
+        index.load(List.of(
+                ville(1, "Montpellier", 302_454, "34"),
+                ville(2, "Béziers", 79_041, "34"),
+                ville(3, "Sète", 44_558, "34"),
+                ville(4, "Nîmes", 151_001, "30")));
+        assertEquals(List.of("Montpellier", "Béziers"), noms(index.findTop("34", 2)));
+        // Beyond the size of the leaderboard, read from the partition
+        assertEquals(List.of("Montpellier", "Béziers", "Sète"), noms(index.findTop("34", 3)));
+
+        // Sète grows past Béziers, then Montpellier moves to the Gard
+        when(villeDao.getVilleResumee(3)).thenReturn(ville(3, "Sète", 90_000, "34"));
+        index.onVilleModifiee(new VilleModifiee(3, new VilleModifiee.Etat("Sète", 44_558, "34"),
+                new VilleModifiee.Etat("Sète", 90_000, "34")));
+        assertEquals(List.of("Montpellier", "Sète"), noms(index.findTop("34", 2)));
+
+        when(villeDao.getVilleResumee(1)).thenReturn(ville(1, "Montpellier", 302_454, "30"));
+        index.onVilleModifiee(new VilleModifiee(1, new VilleModifiee.Etat("Montpellier", 302_454, "34"),
+                new VilleModifiee.Etat("Montpellier", 302_454, "30")));
+        assertEquals(List.of("Sète", "Béziers"), noms(index.findTop("34", 2)));
+        assertEquals(List.of("Montpellier", "Nîmes"), noms(index.findTop("30", 2)));
+
+        index.onVilleModifiee(new VilleModifiee(2, new VilleModifiee.Etat("Béziers", 79_041, "34"), null));
+        assertEquals(List.of("Sète"), noms(index.findTop("34", 2)));
+    }
+
+    @Test
+    void answersLikeAFullScanAfterEveryChange() {
+        Random random = new Random(42);
+        Map<Integer, VilleResume> villes = new HashMap<>();
+        for (int id = 1; id <= 300; id++) {
+            // Few distinct populations, so that many cities tie
+            villes.put(id, ville(id, "V" + id, random.nextInt(50) * 100, "0" + random.nextInt(4)));
+        }
+        index.load(List.copyOf(villes.values()));
+        verifier(villes, random);
+
+        for (int i = 0; i < 200; i++) {
+            int id = 1 + random.nextInt(320);
+            VilleResume avant = villes.get(id);
+            VilleResume apres = random.nextInt(10) == 0 ? null
+                    : ville(id, "V" + id, random.nextInt(50) * 100, "0" + random.nextInt(4));
+            when(villeDao.getVilleResumee(id)).thenReturn(apres);
+            index.onVilleModifiee(new VilleModifiee(id, etat(avant), etat(apres)));
+            if (apres == null) {
+                villes.remove(id);
+            } else {
+                villes.put(id, apres);
+            }
+            verifier(villes, random);
+        }
+    }
+
+    @Test
+    void ignoresChangesAlreadyReadByARebuild() {
+        // The rebuild ran between the commit of the changes and their events
+        Map<Integer, VilleResume> villes = new HashMap<>(Map.of(
+                1, ville(1, "Montpellier", 302_454, "01"),
+                3, ville(3, "Sète", 90_000, "00"),
+                4, ville(4, "Nîmes", 151_001, "01")));
+        index.load(List.copyOf(villes.values()));
+
+        when(villeDao.getVilleResumee(3)).thenReturn(villes.get(3));
+        index.onVilleModifiee(new VilleModifiee(3, new VilleModifiee.Etat("Sète", 44_558, "00"), etat(villes.get(3))));
+        when(villeDao.getVilleResumee(1)).thenReturn(villes.get(1));
+        index.onVilleModifiee(new VilleModifiee(1, new VilleModifiee.Etat("Montpellier", 302_454, "00"), etat(villes.get(1))));
+        index.onVilleModifiee(new VilleModifiee(2, new VilleModifiee.Etat("Béziers", 79_041, "00"), null));
+
+        verifier(villes, new Random(42));
+        assertEquals(List.of("Montpellier", "Nîmes", "Sète"), noms(index.findGreaterThan(null, 0)));
+        assertEquals(List.of("Sète"), noms(index.findTop("00", 5)));
+    }
+
+    /**
+     * Compares the range, threshold and top-N queries with the same queries answered by a
+     * scan of all the cities, ties ordered by descending id like the index, and the lists
+     * with the streams.
+     */
+    private void verifier(Map<Integer, VilleResume> villes, Random random) {
+        int min = random.nextInt(5_000);
+        int max = min + random.nextInt(2_000);
+        int n = 1 + random.nextInt(5);
+        for (String code : new String[]{null, "00", "01", "02", "03", "04"}) {
+            List<VilleResume> partition = villes.values().stream()
+                    .filter(ville -> code == null || ville.codeDepartement().equals(code))
+                    .sorted(Comparator.comparingInt(VilleResume::nbHabitants).thenComparingInt(VilleResume::id).reversed())
+                    .toList();
+            assertEquals(attendus(partition.stream().filter(ville -> ville.nbHabitants() >= min && ville.nbHabitants() <= max)),
+                    codes(index.findBetween(code, min, max)));
+            assertEquals(attendus(partition.stream().filter(ville -> ville.nbHabitants() > min)),
+                    codes(index.findGreaterThan(code, min)));
+            assertEquals(attendus(partition.stream().limit(n)), codes(index.findTop(code, n)));
+            assertEquals(codes(index.findBetween(code, min, max)), codes(index.streamBetween(code, min, max).toList()));
+            assertEquals(codes(index.findGreaterThan(code, min)), codes(index.streamGreaterThan(code, min).toList()));
+        }
+    }
+
+    private static VilleModifiee.Etat etat(VilleResume ville) {
+        return ville == null ? null : new VilleModifiee.Etat(ville.nom(), ville.nbHabitants(), ville.codeDepartement());
+    }
+
+    private static List<String> attendus(Stream<VilleResume> villes) {
+        return villes.map(VilleResume::codeVille).toList();
+    }
+
+    private static List<String> codes(List<VilleDto> villes) {
+        return villes.stream().map(VilleDto::getCodeVille).toList();
+    }
+
+    private static VilleResume ville(int id, String nom, int nbHabitants, String codeDepartement) {
+        return new VilleResume(id, "C" + id, nom, nbHabitants, codeDepartement, "D" + codeDepartement);
+    }
+
+    private static List<String> noms(List<VilleDto> villes) {
+        return villes.stream().map(VilleDto::getNom).toList();
+    }
+}
@@ -0,0 +1,77 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.entity.Departement;
+import fr.diginamic.hello.entity.Ville;
+import fr.diginamic.hello.repository.DepartementRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import({PopulationReconciliation.class, ImportStatus.class})
+class PopulationReconciliationTest {
+
+    @Autowired
+    private PopulationReconciliation reconciliation;
+
+    @Autowired
+    private ImportStatus importStatus;
+
+    @Autowired
+    private DepartementRepository departementRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        // The status is shared by the tests of the cached context
+        importStatus.start();
+        Departement herault = entityManager.persist(new Departement("34", "Hérault", 1_200_000));
+        Departement gard = entityManager.persist(new Departement("30", "Gard", 151_001));
+        entityManager.persist(new Departement("48", "Lozère", 76_000));
+        entityManager.persist(new Ville("34172", "Montpellier", 302_454, herault));
+        entityManager.persist(new Ville("34032", "Béziers", 79_041, herault));
+        entityManager.persist(new Ville("30189", "Nîmes", 151_001, gard));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void correctsTheTotalsThatDifferFromTheirCities() {
+        importStatus.complete();
+
+        assertEquals(2, reconciliation.reconcile());
+        assertEquals(302_454 + 79_041, nbHabitants("34"));
+        assertEquals(151_001, nbHabitants("30"));
+        assertEquals(0, nbHabitants("48"));
+        assertEquals(0, reconciliation.reconcile());
+    }
+
+    @Test
+    void waitsForTheImport() {
+        assertEquals(0, reconciliation.reconcile());
+        assertEquals(1_200_000, nbHabitants("34"));
+    }
+
+    @Test
+    void keepsTheDeltasAppliedWhileADepartementIsSaved() {
+        Departement herault = departementRepository.findByCode("34");
+        departementRepository.addNbHabitants("34", 79_041);
+
+        herault.setNom("Hérault (34)");
+        departementRepository.saveAndFlush(herault);
+
+        assertEquals(1_200_000 + 79_041, nbHabitants("34"));
+    }
+
+    private int nbHabitants(String codeDepartement) {
+        entityManager.clear();
+        return departementRepository.findDtoByCode(codeDepartement).orElseThrow().getNbHabitants();
+    }
+}
@@ -0,0 +1,111 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.PopulationDepartement;
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.PopulationDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PopulationRollupsTest {
+
+    private final VilleDao villeDao = mock(VilleDao.class);
+    private final PopulationRollups rollups = new PopulationRollups(villeDao, mock(PlatformTransactionManager.class));
+
+    private final List<PopulationDepartement> departements = new ArrayList<>(List.of(
+            departement("34", "Hérault", "76", "Occitanie"),
+            departement("30", "Gard", "76", "Occitanie"),
+            departement("13", "Bouches-du-Rhône", "93", "Provence-Alpes-Côte d'Azur")));
+    private final List<VilleResume> villes = new ArrayList<>(List.of(
+            ville(1, "Montpellier", 302_454, "34"),
+            ville(2, "Nîmes", 151_001, "30"),
+            ville(3, "Marseille", 873_076, "13")));
+
+    @Test
+    void followsTheInsertsMovesAndDeletesOfTheCities() {
+        rebuild();
+
+        // Insert
+        rollups.onVilleModifiee(new VilleModifiee(4, null, new VilleModifiee.Etat("Béziers", 79_041, "34")));
+        assertTotaux("34", 2, 302_454 + 79_041);
+        assertTotaux(rollups.getRegion("76"), 3, 302_454 + 79_041 + 151_001);
+
+        // Move to a departement of another region, with a new population
+        rollups.onVilleModifiee(new VilleModifiee(4, new VilleModifiee.Etat("Béziers", 79_041, "34"),
+                new VilleModifiee.Etat("Béziers", 80_000, "13")));
+        assertTotaux("34", 1, 302_454);
+        assertTotaux("13", 2, 873_076 + 80_000);
+        assertTotaux(rollups.getRegion("76"), 2, 302_454 + 151_001);
+        assertTotaux(rollups.getRegion("93"), 2, 873_076 + 80_000);
+
+        // Delete
+        rollups.onVilleModifiee(new VilleModifiee(4, new VilleModifiee.Etat("Béziers", 80_000, "13"), null));
+        assertTotaux("13", 1, 873_076);
+        assertTotaux(rollups.getRegion("93"), 1, 873_076);
+    }
+
+    @Test
+    void rebuildsForADepartementCreatedSinceTheLastRebuild() {
+        rebuild();
+
+        departements.add(departement("48", "Lozère", "76", "Occitanie"));
+        villes.add(ville(4, "Mende", 12_000, "48"));
+        rollups.onVilleModifiee(new VilleModifiee(4, null, new VilleModifiee.Etat("Mende", 12_000, "48")));
+
+        verify(villeDao, times(2)).getVillesResumees();
+        assertTotaux("48", 1, 12_000);
+        assertTotaux(rollups.getRegion("76"), 3, 302_454 + 151_001 + 12_000);
+        assertEquals(3, rollups.getDepartementsOfRegion("76").size());
+    }
+
+    @Test
+    void ignoresAChangeAlreadyReadByARebuild() {
+        // The rebuild ran between the commit of the changes and their events
+        villes.set(0, ville(1, "Montpellier", 310_000, "34"));
+        villes.add(ville(4, "Béziers", 79_041, "34"));
+        villes.remove(2);
+        rebuild();
+
+        rollups.onVilleModifiee(new VilleModifiee(1, new VilleModifiee.Etat("Montpellier", 302_454, "34"),
+                new VilleModifiee.Etat("Montpellier", 310_000, "34")));
+        rollups.onVilleModifiee(new VilleModifiee(4, null, new VilleModifiee.Etat("Béziers", 79_041, "34")));
+        rollups.onVilleModifiee(new VilleModifiee(3, new VilleModifiee.Etat("Marseille", 873_076, "13"), null));
+
+        assertTotaux("34", 2, 310_000 + 79_041);
+        assertTotaux("13", 0, 0);
+        assertTotaux(rollups.getRegion("93"), 0, 0);
+    }
+
+    private void rebuild() {
+        when(villeDao.getPopulationParDepartement()).thenAnswer(invocation -> List.copyOf(departements));
+        when(villeDao.getVillesResumees()).thenAnswer(invocation -> List.copyOf(villes));
+        rollups.onRecensementModifie(new RecensementModifie());
+    }
+
+    private void assertTotaux(String codeDepartement, int nbVilles, long nbHabitants) {
+        assertTotaux(rollups.getDepartement(codeDepartement), nbVilles, nbHabitants);
+    }
+
+    private static void assertTotaux(PopulationDto totaux, int nbVilles, long nbHabitants) {
+        assertEquals(nbVilles, totaux.getNbVilles());
+        assertEquals(nbHabitants, totaux.getNbHabitants());
+    }
+
+    private static PopulationDepartement departement(String code, String nom, String codeRegion, String nomRegion) {
+        // The totals of the aggregate are not used, the cities are summed instead
+        return new PopulationDepartement(code, nom, codeRegion, nomRegion, 0, 0);
+    }
+
+    private static VilleResume ville(int id, String nom, int nbHabitants, String codeDepartement) {
+        return new VilleResume(id, "C" + id, nom, nbHabitants, codeDepartement, "Departement " + codeDepartement);
+    }
+}
@@ -0,0 +1,68 @@
+package fr.diginamic.hello.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the tokenizer-based line parsing with the former split/replaceAll parsing
+ * over every line of the census file.
+ * <p>
+ * Run from the project root with the test classpath, e.g. from the IDE, through {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecensementCsvParserBenchmark {
+
+    private List<String> lines;
+
+    @Setup
+    public void loadLines() throws IOException {
+        List<String> all = Files.readAllLines(Path.of("src/main/resources/data/recensement.csv"), StandardCharsets.UTF_8);
+        lines = all.subList(1, all.size());
+    }
+
+    @Benchmark
+    public void legacySplit(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(RecensementCsvParserTest.legacyParseLine(line));
+        }
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole blackhole) {
+        CsvTokenizer tokenizer = new CsvTokenizer(';');
+        ImportProgress progress = new ImportProgress(0);
+        for (String line : lines) {
+            blackhole.consume(RecensementCsvParser.parseLine(tokenizer, line, 0, line.length(), progress));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RecensementCsvParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,126 @@
+package fr.diginamic.hello.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecensementCsvParserTest {
+
+    private static final Path CSV = Path.of("src/main/resources/data/recensement.csv");
+
+    /**
+     * The tokenizer must accept and reject exactly the lines the former
+     * split/replaceAll parsing did, with the same values.
+     */
+    @Test
+    void parseLineMatchesLegacyParsingOnCensusFile() throws IOException {
+        List<String> lines = Files.readAllLines(CSV, StandardCharsets.UTF_8);
+
+        for (String line : lines.subList(1, lines.size())) {
+            assertEquals(legacyParseLine(line), RecensementCsvParser.parseLine(line), line);
+        }
+    }
+
+    @Test
+    void parallelParsingMatchesSequentialParsingOnCensusFile() throws IOException {
+        List<LigneRecensement> sequential = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(CSV, StandardCharsets.UTF_8)) {
+            RecensementCsvParser.parse(reader, 1000, new ImportProgress(0), sequential::addAll);
+        }
+
+        List<LigneRecensement> parallel = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new ParallelRecensementCsvParser(pool).parse(CSV, new ImportProgress(0), parallel::addAll);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    void snapshotRestoresParsedLines(@TempDir Path dir) throws IOException {
+        List<LigneRecensement> parsed = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(CSV, StandardCharsets.UTF_8)) {
+            RecensementCsvParser.parse(reader, 1000, new ImportProgress(0), parsed::addAll);
+        }
+
+        Path snapshot = dir.resolve("recensement.snapshot");
+        String checksum = CsvImportService.checksum(CSV);
+        try (RecensementSnapshot.Writer writer = RecensementSnapshot.create(snapshot, checksum)) {
+            for (LigneRecensement ligne : parsed) {
+                writer.write(ligne);
+            }
+            writer.commit();
+        }
+
+        List<LigneRecensement> restored = new ArrayList<>();
+        RecensementSnapshot.read(snapshot, 1000, restored::addAll);
+
+        assertEquals(checksum, RecensementSnapshot.readChecksum(snapshot));
+        assertEquals(parsed, restored);
+    }
+
+    @Test
+    void parseIntSkipsWhitespaceAndThousandsSeparators() {
+        CsvTokenizer tokenizer = new CsvTokenizer(';');
+        String line = "4 010;1 234 567; -12 ;12a;;+7";
+
+        assertEquals(6, tokenizer.tokenize(line, 0, line.length()));
+        assertEquals(4010, tokenizer.parseInt(0));
+        assertEquals(1234567, tokenizer.parseInt(1));
+        assertEquals(-12, tokenizer.parseInt(2));
+        assertEquals(CsvTokenizer.INVALID_INT, tokenizer.parseInt(3));
+        assertEquals(CsvTokenizer.INVALID_INT, tokenizer.parseInt(4));
+        assertEquals(7, tokenizer.parseInt(5));
+    }
+
+    /**
+     * The parsing of a line as done by CsvImportService before the tokenizer.
+     */
+    static LigneRecensement legacyParseLine(String line) {
+        if (line.trim().isEmpty()) return null;
+
+        String[] tokens = line.split(";");
+
+        if (tokens.length < 8) return null;
+
+        String codeDepartement = tokens[2].trim();
+        String codeVille = tokens[5].trim();
+        String nom = tokens[6].trim();
+        String nbHab = tokens[7].trim();
+        String nbHabTotal = tokens[9].trim();
+
+        if (codeDepartement.isEmpty()) return null;
+        if (nom.length() < 2 || nom.length() > 255) return null;
+        if (codeVille.isEmpty()) return null;
+        int nbHabitants;
+        try {
+            nbHabitants = Integer.parseInt(nbHab.replaceAll("\\s", ""));
+            if (nbHabitants < 1) return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int nbHabitantsTotal;
+        try {
+            nbHabitantsTotal = Integer.parseInt(nbHabTotal.replaceAll("\\s", ""));
+            if (nbHabitantsTotal < 1) return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        return new LigneRecensement(tokens[0].trim(), tokens[1].trim(), codeDepartement, tokens[3].trim(),
+                tokens[4].trim(), codeVille, nom, nbHabitants, nbHabitantsTotal);
+    }
+}
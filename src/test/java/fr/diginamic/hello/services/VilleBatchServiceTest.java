@@ -0,0 +1,86 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.dtos.ResultatLotDto;
+import fr.diginamic.hello.dtos.VilleLotDto;
+import fr.diginamic.hello.entity.Departement;
+import fr.diginamic.hello.entity.Ville;
+import fr.diginamic.hello.repository.DepartementRepository;
+import fr.diginamic.hello.repository.VilleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import(VilleBatchService.class)
+class VilleBatchServiceTest {
+
+    @Autowired
+    private VilleBatchService villeBatchService;
+
+    @Autowired
+    private VilleRepository villeRepository;
+
+    @Autowired
+    private DepartementRepository departementRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Ville montpellier;
+
+    @BeforeEach
+    void setUp() {
+        Departement herault = entityManager.persist(new Departement("34", "Hérault", 1_200_000));
+        montpellier = entityManager.persist(new Ville("34172", "Montpellier", 302_454, herault));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void insertsReportAResultPerCity() {
+        List<ResultatLotDto> resultats = resultats(villeBatchService.insertVilles(List.of(
+                new VilleLotDto(null, "34032", "Béziers", 79_041, "34"),
+                new VilleLotDto(null, "30189", "Nîmes", 151_001, "30"),
+                new VilleLotDto(null, "34172", "Montpellier", 302_454, "34"),
+                new VilleLotDto(null, "34301", "Sète", 0, "34"))).getBody());
+
+        assertEquals(List.of(201, 404, 409, 400), resultats.stream().map(ResultatLotDto::getStatut).toList());
+        assertEquals("Béziers", villeRepository.findById(resultats.getFirst().getId()).orElseThrow().getNom());
+        assertEquals(2, villeRepository.count());
+        assertEquals(1_200_000 + 79_041, nbHabitants("34"));
+    }
+
+    @Test
+    void updatesAndDeletesApplyToExistingCitiesOnly() {
+        int id = montpellier.getId();
+        List<ResultatLotDto> resultats = resultats(villeBatchService.updateVilles(List.of(
+                new VilleLotDto(id, "34172", "Montpellier", 310_000, "34"),
+                new VilleLotDto(id + 1000, "34032", "Béziers", 79_041, "34"))).getBody());
+        assertEquals(List.of(200, 404), resultats.stream().map(ResultatLotDto::getStatut).toList());
+        entityManager.clear();
+        assertEquals(310_000, villeRepository.findById(id).orElseThrow().getNbHabitants());
+        assertEquals(1_200_000 - 302_454 + 310_000, nbHabitants("34"));
+
+        resultats = resultats(villeBatchService.deleteVilles(Arrays.asList(id, id, null)).getBody());
+        assertEquals(List.of(200, 404, 400), resultats.stream().map(ResultatLotDto::getStatut).toList());
+        assertEquals(0, villeRepository.count());
+        assertEquals(1_200_000 - 302_454, nbHabitants("34"));
+    }
+
+    private int nbHabitants(String codeDepartement) {
+        return departementRepository.findDtoByCode(codeDepartement).orElseThrow().getNbHabitants();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ResultatLotDto> resultats(Object body) {
+        return (List<ResultatLotDto>) body;
+    }
+}
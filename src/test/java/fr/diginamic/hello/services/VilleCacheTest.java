@@ -0,0 +1,61 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.dtos.VilleDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class VilleCacheTest {
+
+    private static final VilleDto PARIS = new VilleDto("056", "Paris", 2_133_111, "75", "Paris");
+
+    @Test
+    void writesEvictTheIdAndNamesOfTheCity() {
+        VilleCache cache = new VilleCache(100, Duration.ofMinutes(10));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertSame(PARIS, cache.getByNom("paris", () -> load(loads)));
+        assertSame(PARIS, cache.getByNom("PARIS", () -> load(loads)));
+        assertSame(PARIS, cache.getById(1, () -> load(loads)));
+        assertEquals(2, loads.get());
+
+        VilleModifiee.Etat etat = new VilleModifiee.Etat("Paris", 2_133_111, "75");
+        cache.onVilleModifiee(new VilleModifiee(1, etat, etat));
+        cache.getByNom("Paris", () -> load(loads));
+        cache.getById(1, () -> load(loads));
+
+        assertEquals(4, loads.get());
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(2, cache.getStats().getInvalidations());
+        assertEquals(1, registry.get("recensement.cache.villes.requetes").tag("resultat", "hit").functionCounter().count());
+        assertEquals(2, registry.get("recensement.cache.villes.invalidations").functionCounter().count());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvictedBeyondMaxSize() {
+        VilleCache cache = new VilleCache(2, Duration.ofMinutes(10));
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.getById(1, () -> load(loads));
+        cache.getById(2, () -> load(loads));
+        cache.getById(1, () -> load(loads));
+        cache.getById(3, () -> load(loads));
+        cache.getById(1, () -> load(loads));
+        cache.getById(2, () -> load(loads));
+
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.getStats().getEvictions());
+    }
+
+    private static VilleDto load(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return PARIS;
+    }
+}
@@ -0,0 +1,66 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.VilleDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class VillePrefixIndexTest {
+
+    private final VilleDao villeDao = mock(VilleDao.class);
+    private final VillePrefixIndex index = new VillePrefixIndex(villeDao, mock(PlatformTransactionManager.class));
+
+    @Test
+    void searchIgnoresCaseAndAccentsAndRanksByPopulation() {
+        when(villeDao.getVillesResumees()).thenReturn(List.of(
+                ville(1, "Évry-Courcouronnes", 69_000),
+                ville(2, "Evreux", 47_000),
+                ville(3, "Évian-les-Bains", 9_000),
+                ville(4, "Paris", 2_100_000)));
+        index.onRecensementModifie(new RecensementModifie());
+
+        assertEquals(List.of("Évry-Courcouronnes", "Evreux", "Évian-les-Bains"), noms(index.search("ev", 10)));
+        assertEquals(List.of("Évry-Courcouronnes", "Evreux"), noms(index.search("ÉV", 2)));
+        assertEquals(List.of(), noms(index.search("lyon", 10)));
+    }
+
+    @Test
+    void searchSpellsLigaturesLikeTheTrigramIndex() {
+        when(villeDao.getVillesResumees()).thenReturn(List.of(ville(1, "Œuilly", 600), ville(2, "Oeting", 2_800)));
+        index.onRecensementModifie(new RecensementModifie());
+
+        assertEquals(List.of("Oeting", "Œuilly"), noms(index.search("oe", 10)));
+        assertEquals(List.of("Œuilly"), noms(index.search("Œu", 10)));
+    }
+
+    @Test
+    void writesReplaceTheEntryOfTheCity() {
+        when(villeDao.getVillesResumees()).thenReturn(List.of(ville(1, "Evreux", 47_000)));
+        index.onRecensementModifie(new RecensementModifie());
+
+        when(villeDao.getVilleResumee(1)).thenReturn(ville(1, "Lyon", 520_000));
+        index.onVilleModifiee(new VilleModifiee(1, new VilleModifiee.Etat("Evreux", 47_000, "27"),
+                new VilleModifiee.Etat("Lyon", 520_000, "69")));
+
+        assertEquals(List.of(), noms(index.search("ev", 10)));
+        assertEquals(List.of("Lyon"), noms(index.search("ly", 10)));
+
+        index.onVilleModifiee(new VilleModifiee(1, new VilleModifiee.Etat("Lyon", 520_000, "69"), null));
+        assertEquals(List.of(), noms(index.search("ly", 10)));
+    }
+
+    private static VilleResume ville(int id, String nom, int nbHabitants) {
+        return new VilleResume(id, String.valueOf(id), nom, nbHabitants, "00", "Departement 00");
+    }
+
+    private static List<String> noms(List<VilleDto> villes) {
+        return villes.stream().map(VilleDto::getNom).toList();
+    }
+}
@@ -0,0 +1,110 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.entity.Departement;
+import fr.diginamic.hello.entity.Ville;
+import fr.diginamic.hello.repository.DepartementRepository;
+import fr.diginamic.hello.repository.VilleRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+// The database is read on another thread, outside the transaction of the test: the
+// cities are committed, then deleted after each test
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(VilleDao.class)
+class VilleReactiveServiceTest {
+
+    @Autowired
+    private VilleRepository villeRepository;
+
+    @Autowired
+    private DepartementRepository departementRepository;
+
+    @Autowired
+    private VilleDao villeDao;
+
+    private final PopulationIndex populationIndex = new PopulationIndex(null, null, 100);
+    private VilleReactiveService service;
+
+    @BeforeEach
+    void setUp() {
+        Departement herault = departementRepository.save(new Departement("34", "Hérault", 381_495));
+        Departement gard = departementRepository.save(new Departement("30", "Gard", 151_001));
+        villeRepository.saveAll(List.of(
+                new Ville("34172", "Montpellier", 302_454, herault),
+                new Ville("34032", "Béziers", 79_041, herault),
+                new Ville("30189", "Nîmes", 151_001, gard),
+                new Ville("34003", "Agde", 29_358, herault),
+                new Ville("30028", "Bagnols-sur-Cèze", 18_103, gard)));
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        // Pages of two cities, so the database is read over several pages
+        service = new VilleReactiveService(villeRepository, villeDao, populationIndex,
+                new VillePrefixIndex(mock(VilleDao.class), transactionManager),
+                new VilleTrigramIndex(mock(VilleDao.class), transactionManager), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        villeRepository.deleteAllInBatch();
+        departementRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void readsTheDatabaseUntilTheIndexIsBuilt() {
+        StepVerifier.create(service.findGreaterThan(null, 20_000).map(VilleDto::getNom))
+                .expectNext("Montpellier", "Nîmes", "Béziers", "Agde")
+                .verifyComplete();
+        StepVerifier.create(service.findBetween("34", 20_000, 302_454).map(VilleDto::getNom), 1)
+                .expectNext("Montpellier")
+                .thenRequest(1)
+                .expectNext("Béziers")
+                .thenRequest(1)
+                .expectNext("Agde")
+                .verifyComplete();
+        StepVerifier.create(service.findTop("34", 1).map(VilleDto::getNom))
+                .expectNext("Montpellier")
+                .verifyComplete();
+    }
+
+    @Test
+    void emitsTheCitiesOfTheIndexAsTheyAreRequested() {
+        populationIndex.load(List.of(
+                new VilleResume(1, "34172", "Montpellier", 302_454, "34", "Hérault"),
+                new VilleResume(2, "34032", "Béziers", 79_041, "34", "Hérault"),
+                new VilleResume(3, "30189", "Nîmes", 151_001, "30", "Gard")));
+
+        StepVerifier.create(service.findBetween(null, 0, 1_000_000).map(VilleDto::getNom), 1)
+                .expectNext("Montpellier")
+                .thenRequest(2)
+                .expectNext("Nîmes", "Béziers")
+                .verifyComplete();
+    }
+
+    @Test
+    void signalsInvalidParametersAndMissingIndexes() {
+        StepVerifier.create(service.findBetween(null, 10, 1))
+                .expectErrorMatches(e -> ((ResponseStatusException) e).getStatusCode() == HttpStatus.BAD_REQUEST)
+                .verify();
+        StepVerifier.create(service.searchLike("montpelier", 10))
+                .expectErrorMatches(e -> ((ResponseStatusException) e).getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE)
+                .verify();
+    }
+}
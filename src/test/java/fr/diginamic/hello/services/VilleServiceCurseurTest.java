@@ -0,0 +1,138 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.dtos.VillesCurseurDto;
+import fr.diginamic.hello.entity.Departement;
+import fr.diginamic.hello.entity.Ville;
+import fr.diginamic.hello.repository.DepartementRepository;
+import fr.diginamic.hello.repository.VilleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import(VilleDao.class)
+class VilleServiceCurseurTest {
+
+    @Autowired
+    private VilleRepository villeRepository;
+
+    @Autowired
+    private VilleDao villeDao;
+
+    @Autowired
+    private DepartementRepository departementRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private VilleService service;
+
+    @BeforeEach
+    void setUp() {
+        Departement herault = entityManager.persist(new Departement("34", "Hérault", 0));
+        // Three cities share the same population, only their ids order them
+        entityManager.persist(new Ville("34172", "Montpellier", 302_454, herault));
+        entityManager.persist(new Ville("34032", "Béziers", 79_041, herault));
+        entityManager.persist(new Ville("34301", "Sète", 44_000, herault));
+        entityManager.persist(new Ville("34003", "Agde", 44_000, herault));
+        entityManager.persist(new Ville("34145", "Lunel", 44_000, herault));
+        entityManager.persist(new Ville("34108", "Frontignan", 22_000, herault));
+        entityManager.flush();
+        entityManager.clear();
+
+        service = new VilleService(villeRepository, villeDao, departementRepository, mock(ApplicationEventPublisher.class),
+                mock(VilleCache.class), mock(VillePrefixIndex.class), mock(VilleTrigramIndex.class), mock(PopulationIndex.class));
+    }
+
+    @Test
+    void readsEveryCityOnceByPopulationAcrossTies() {
+        List<String> attendues = villeRepository.findAll().stream()
+                .sorted(Comparator.comparingInt(Ville::getNbHabitants).reversed()
+                        .thenComparing(Comparator.comparingInt(Ville::getId).reversed()))
+                .map(Ville::getCodeVille)
+                .toList();
+
+        // Pages of 2 split the cities sharing a population
+        assertEquals(attendues, codes(lireTout("population", 2)));
+        assertEquals(attendues, codes(lireTout("population", 4)));
+    }
+
+    @Test
+    void readsEveryCityOnceById() {
+        List<String> attendues = villeRepository.findAll().stream()
+                .sorted(Comparator.comparingInt(Ville::getId))
+                .map(Ville::getCodeVille)
+                .toList();
+
+        assertEquals(attendues, codes(lireTout("id", 2)));
+    }
+
+    @Test
+    void endsOnAFullLastPage() {
+        VillesCurseurDto page = page(null, "population", 3);
+        assertNotNull(page.getSuivant());
+
+        page = page(page.getSuivant(), null, 3);
+        assertEquals(3, page.getVilles().size());
+        assertNull(page.getSuivant());
+    }
+
+    @Test
+    void reducesLargePagesToTheMaximumSize() {
+        VillesCurseurDto page = page(null, "id", Integer.MAX_VALUE);
+
+        assertEquals(6, page.getVilles().size());
+        assertNull(page.getSuivant());
+    }
+
+    @Test
+    void rejectsTamperedCursors() {
+        for (String curseur : List.of("???", token("p:44000"), token("p:abc:1"), token("p:-1:5"), token("i:4294967295"),
+                token("x:12"), token("i:1:2"))) {
+            assertEquals(400, service.extractVillesParCurseur(curseur, null, 2, false).getStatusCode().value(), curseur);
+        }
+    }
+
+    private List<VilleDto> lireTout(String tri, int size) {
+        List<VilleDto> villes = new ArrayList<>();
+        VillesCurseurDto page = page(null, tri, size);
+        villes.addAll(page.getVilles());
+        while (page.getSuivant() != null) {
+            page = page(page.getSuivant(), null, size);
+            villes.addAll(page.getVilles());
+        }
+        return villes;
+    }
+
+    private VillesCurseurDto page(String curseur, String tri, int size) {
+        ResponseEntity<?> response = service.extractVillesParCurseur(curseur, tri, size, false);
+        assertEquals(200, response.getStatusCode().value());
+        return (VillesCurseurDto) response.getBody();
+    }
+
+    private static List<String> codes(List<VilleDto> villes) {
+        return villes.stream().map(VilleDto::getCodeVille).toList();
+    }
+
+    private static String token(String valeur) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valeur.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,75 @@
+package fr.diginamic.hello.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.diginamic.hello.dtos.VilleDto;
+import fr.diginamic.hello.repository.VilleRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VilleStreamServiceTest {
+
+    private final VilleRepository villeRepository = mock(VilleRepository.class);
+    private final PopulationIndex populationIndex = mock(PopulationIndex.class);
+    private final VilleStreamService service = new VilleStreamService(villeRepository, populationIndex,
+            new ObjectMapper(), mock(PlatformTransactionManager.class));
+
+    @Test
+    void writesOneCityPerLineAndClosesTheCursor() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        when(villeRepository.streamDtoByNbHabitantsBetweenOrderByNbHabitantsDesc(0, 1_000_000)).thenReturn(Stream.of(
+                new VilleDto("34172", "Montpellier", 302_454, "34", "Hérault"),
+                new VilleDto("30189", "Nîmes", 151_001, "30", "Gard")).onClose(() -> closed.set(true)));
+
+        ResponseEntity<StreamingResponseBody> response = service.streamCitiesByPopulationRange(0, 1_000_000);
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        String[] lignes = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lignes.length);
+        assertTrue(lignes[0].startsWith("{") && lignes[0].contains("\"nom\":\"Montpellier\""));
+        assertTrue(lignes[1].contains("\"nom\":\"Nîmes\""));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void readsTheIndexWhileWriting() throws Exception {
+        when(populationIndex.isReady()).thenReturn(true);
+        AtomicInteger lues = new AtomicInteger();
+        when(populationIndex.streamGreaterThan(null, 100_000)).thenReturn(Stream.of(
+                new VilleDto("34172", "Montpellier", 302_454, "34", "Hérault"),
+                new VilleDto("30189", "Nîmes", 151_001, "30", "Gard")).peek(ville -> lues.incrementAndGet()));
+
+        ResponseEntity<StreamingResponseBody> response = service.streamTopNCitiesByPopulation(100_000);
+        assertEquals(0, lues.get());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertEquals(2, lues.get());
+        assertEquals(2, out.toString(StandardCharsets.UTF_8).split("\n").length);
+        verify(populationIndex, never()).findGreaterThan(null, 100_000);
+    }
+
+    @Test
+    void rejectsInvalidRanges() {
+        assertEquals(HttpStatus.BAD_REQUEST, service.streamCitiesByPopulationRange(10, 1).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, service.streamTopNCitiesByPopulation(0).getStatusCode());
+    }
+}
@@ -0,0 +1,109 @@
+package fr.diginamic.hello.services;
+
+import fr.diginamic.hello.daos.VilleDao;
+import fr.diginamic.hello.daos.VilleResume;
+import fr.diginamic.hello.dtos.VilleDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class VilleTrigramIndexTest {
+
+    private final VilleDao villeDao = mock(VilleDao.class);
+    private final VilleTrigramIndex index = new VilleTrigramIndex(villeDao, mock(PlatformTransactionManager.class));
+
+    @Test
+    void normalizeRemovesAccentsAndCollapsesPunctuation() {
+        assertEquals("l abergement clemenciat", VilleTrigramIndex.normalize("L' Abergement-Clémenciat"));
+        assertEquals("oeuilly saint etienne", VilleTrigramIndex.normalize(" Œuilly--Saint  Étienne "));
+    }
+
+    @Test
+    void searchRanksBySimilarityThenPopulation() {
+        when(villeDao.getVillesResumees()).thenReturn(List.of(
+                ville(1, "L' Abergement-Clémenciat", 767),
+                ville(2, "L' Abergement-de-Varey", 243),
+                ville(3, "Montpellier", 302_454),
+                ville(4, "Montélier", 4_077),
+                ville(5, "Marseille", 873_076)));
+        index.onRecensementModifie(new RecensementModifie());
+
+        assertEquals(List.of("L' Abergement-Clémenciat", "L' Abergement-de-Varey"), noms(index.search("abergement clemenciat", 10)));
+        assertEquals(List.of("Montpellier"), noms(index.search("MONTPELIER", 1)));
+        assertEquals(List.of("Marseille"), noms(index.search("marseile", 10)));
+        assertEquals(List.of(), noms(index.search("lyon", 10)));
+        assertEquals(List.of(), noms(index.search("--", 10)));
+    }
+
+    @Test
+    void writesReplaceTheEntryOfTheCity() {
+        when(villeDao.getVillesResumees()).thenReturn(List.of(ville(1, "Evreux", 47_000), ville(2, "Lyon", 520_000)));
+        index.onRecensementModifie(new RecensementModifie());
+
+        when(villeDao.getVilleResumee(1)).thenReturn(ville(1, "Villeurbanne", 150_000));
+        index.onVilleModifiee(new VilleModifiee(1, new VilleModifiee.Etat("Evreux", 47_000, "27"),
+                new VilleModifiee.Etat("Villeurbanne", 150_000, "69")));
+
+        assertEquals(List.of(), noms(index.search("evreux", 10)));
+        assertEquals(List.of("Villeurbanne"), noms(index.search("villeurbane", 10)));
+
+        index.onVilleModifiee(new VilleModifiee(1, new VilleModifiee.Etat("Villeurbanne", 150_000, "69"), null));
+        assertEquals(List.of(), noms(index.search("villeurbane", 10)));
+        assertEquals(List.of("Lyon"), noms(index.search("lyon", 10)));
+    }
+
+    @Test
+    void writesReuseTheSlotsOfTheIndex() {
+        when(villeDao.getVillesResumees()).thenReturn(List.of(ville(1, "Evreux", 47_000), ville(2, "Lyon", 520_000)));
+        index.onRecensementModifie(new RecensementModifie());
+
+        // Renaming a city many times keeps its slot
+        for (int i = 0; i < 100; i++) {
+            when(villeDao.getVilleResumee(1)).thenReturn(ville(1, "Evreux " + (i + 1), 47_000));
+            index.onVilleModifiee(new VilleModifiee(1, new VilleModifiee.Etat("Evreux " + (i == 0 ? "" : i), 47_000, "27"),
+                    new VilleModifiee.Etat("Evreux " + (i + 1), 47_000, "27")));
+        }
+        assertEquals(2, index.size());
+        assertEquals(List.of("Evreux 100"), noms(index.search("evreux 100", 1)));
+
+        // A new city takes the slot of a deleted one
+        index.onVilleModifiee(new VilleModifiee(2, new VilleModifiee.Etat("Lyon", 520_000, "69"), null));
+        when(villeDao.getVilleResumee(3)).thenReturn(ville(3, "Villeurbanne", 150_000));
+        index.onVilleModifiee(new VilleModifiee(3, null, new VilleModifiee.Etat("Villeurbanne", 150_000, "69")));
+        assertEquals(2, index.size());
+        assertEquals(List.of(), noms(index.search("lyon", 10)));
+        assertEquals(List.of("Villeurbanne"), noms(index.search("villeurbane", 10)));
+        assertEquals(List.of("Evreux 100"), noms(index.search("evreux 100", 1)));
+    }
+
+    @Test
+    void ignoresWritesAlreadyReadByARebuild() {
+        // The rebuild ran between the commit of the writes and their events
+        when(villeDao.getVillesResumees()).thenReturn(List.of(ville(1, "Villeurbanne", 150_000), ville(3, "Vienne", 30_000)));
+        index.onRecensementModifie(new RecensementModifie());
+
+        when(villeDao.getVilleResumee(1)).thenReturn(ville(1, "Villeurbanne", 150_000));
+        index.onVilleModifiee(new VilleModifiee(1, new VilleModifiee.Etat("Evreux", 47_000, "27"),
+                new VilleModifiee.Etat("Villeurbanne", 150_000, "69")));
+        when(villeDao.getVilleResumee(3)).thenReturn(ville(3, "Vienne", 30_000));
+        index.onVilleModifiee(new VilleModifiee(3, null, new VilleModifiee.Etat("Vienne", 30_000, "38")));
+        index.onVilleModifiee(new VilleModifiee(2, new VilleModifiee.Etat("Lyon", 520_000, "69"), null));
+
+        assertEquals(2, index.size());
+        assertEquals(List.of("Villeurbanne"), noms(index.search("villeurbanne", 10)));
+        assertEquals(List.of("Vienne"), noms(index.search("vienne", 10)));
+    }
+
+    private static VilleResume ville(int id, String nom, int nbHabitants) {
+        return new VilleResume(id, String.valueOf(id), nom, nbHabitants, "00", "Departement 00");
+    }
+
+    private static List<String> noms(List<VilleDto> villes) {
+        return villes.stream().map(VilleDto::getNom).toList();
+    }
+}